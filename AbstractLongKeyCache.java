@@ -0,0 +1,605 @@
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.StampedLock;
+
+import org.springframework.beans.factory.InitializingBean;
+
+import com.google.common.cache.CacheLoader;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.Uninterruptibles;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * @Description {@code long}型Key緩存抽象類
+ * <pre>
+ * 與{@link AbstractGuavaCache}語義一致(加載、刷新、過期、預加載), 適用於SKU/門店ID等數值型Key的大容量緩存:
+ *   Key以{@code long}存儲於分段加鎖的開放定址表, 無裝箱Key及Guava節點開銷;
+ *   {@link #getValue(long)}命中時為樂觀讀, 不分配對象, 僅未命中加載時裝箱。
+ * 容量超限時按段採樣淘汰最久未訪問的元素(近似LRU)。
+ * </pre>
+ * @param <V> the cache of Value
+ *
+ * @Date 2022/5/23
+ * @author mingzhe.xiang
+ */
+@Slf4j
+public abstract class AbstractLongKeyCache<V> implements InitializingBean {
+
+    /** 默认缓存过期时间 **/
+    private static final int  DEFAULT_EXPIRE_TIME  = 60;
+    /** 默认缓存初始化大小 **/
+    private static final int  DEFAULT_SIZE = 100;
+    /** 默认缓存元素最大个数 **/
+    private static final int  DEFAULT_MAX_SIZE = 1000;
+    /** 分段數 **/
+    private static final int  SEGMENT_COUNT = 16;
+    private static final int  SEGMENT_SHIFT = Integer.numberOfTrailingZeros(SEGMENT_COUNT);
+    /** 淘汰時採樣個數 **/
+    private static final int  EVICTION_SAMPLES = 8;
+
+    private static final byte EMPTY = 0;
+    private static final byte FULL = 1;
+    private static final byte DELETED = 2;
+
+    private volatile Segment<V>[] segments;
+
+    /** 正在加載的Key, 保證同一Key只加載一次 **/
+    private final Map<Long, CompletableFuture<V>> loading = new ConcurrentHashMap<>();
+
+    private long expireAfterAccessNanos;
+    private long expireAfterWriteNanos;
+    private long refreshAfterWriteNanos;
+
+    /**
+     * 实例化cache
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Segment<V>[] cacheInstance() {
+        if(segments == null){
+            synchronized (this) {
+                if(segments == null){
+                    TimeUnit unit = timeUnit();
+                    expireAfterAccessNanos = unit.toNanos(expireAfterAccess());
+                    expireAfterWriteNanos = unit.toNanos(expireAfterWrite());
+                    refreshAfterWriteNanos = unit.toNanos(refreshAfterWrite());
+                    int segmentMaxSize = (int) Math.max((maximumSize() + SEGMENT_COUNT - 1) / SEGMENT_COUNT, 1);
+                    int segmentCapacity = Math.max(initialCapacity() / SEGMENT_COUNT, 1);
+                    Segment<V>[] newSegments = new Segment[SEGMENT_COUNT];
+                    for (int i = 0; i < SEGMENT_COUNT; i++) {
+                        newSegments[i] = new Segment<>(this, segmentCapacity, segmentMaxSize);
+                    }
+                    segments = newSegments;
+                }
+            }
+        }
+        return segments;
+    }
+
+    /**
+     * 初始容量, 默認100<p>
+     * 子類可自行決定是否重写
+     */
+    protected int initialCapacity() {
+        return DEFAULT_SIZE;
+    }
+
+    /**
+     * 緩存元素最大個數, 默認1000<p>
+     * 子類可自行決定是否重写
+     */
+    protected long maximumSize() {
+        return DEFAULT_MAX_SIZE;
+    }
+
+    /**
+     * {@code expireAfterAccess}過期時間, 默認60分鐘, 0為不啟用<p>
+     * 子類可自行決定是否重写
+     */
+    protected long expireAfterAccess() {
+        return DEFAULT_EXPIRE_TIME;
+    }
+
+    /**
+     * {@code expireAfterWrite}過期時間, 默認不啟用<p>
+     * 子類可自行決定是否重写
+     */
+    protected long expireAfterWrite() {
+        return 0;
+    }
+
+    /**
+     * {@code refreshAfterWrite}刷新時間, 默認不啟用<p>
+     * 子類可自行決定是否重写
+     */
+    protected long refreshAfterWrite() {
+        return 0;
+    }
+
+    /**
+     * 過期/刷新時間單位, 默認分鐘
+     */
+    protected TimeUnit timeUnit() {
+        return TimeUnit.MINUTES;
+    }
+
+    /**
+     * 加載數據到緩存
+     *
+     */
+    protected abstract V loadData(long key);
+
+    /**
+     * 重新加載緩存(指定{@code refreshAfterWrite}時 建議複寫該方法)
+     * 子類自行決定是否重寫
+     */
+    protected ListenableFuture<V> reloadData(long key, V oldValue) throws Exception {
+        return Futures.immediateFuture(loadData(key));
+    }
+
+    /**
+     * 獲取緩存數據
+     */
+    public V getValue(long key) throws ExecutionException {
+        long hash = hash(key);
+        V value = segmentFor(hash).get(key, hash, System.nanoTime());
+        return null != value ? value : load(key, hash);
+    }
+
+    /**
+     * 獲取緩存數據,未獲取到數據時 返回默認值
+     */
+    public V getValueOrDefault(long key, V defaultValue) {
+        try {
+            return getValue(key);
+        } catch (Exception e) {
+            log.error("Long Key Cache:key:{} not found", key);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 寫入緩存, 供預加載等場景使用
+     */
+    protected void put(long key, V value) {
+        long hash = hash(key);
+        segmentFor(hash).put(key, hash, value, System.nanoTime());
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        // 缓存对象初始化
+        segments = cacheInstance();
+        // 预加载缓存数据
+        preLoadData();
+    }
+
+    /**
+     * CacheBean初始化时 预加载缓存数据, 通過{@link #put(long, Object)}寫入<p>
+     * 子類自行決定是否重寫,并非所有缓存都需要预加载
+     */
+    protected void preLoadData() {}
+
+    /**
+     * 刷新缓存
+     * @param key
+     */
+    protected void refresh(long key) {
+        log.info("[{}] refresh key:{}", this.getClass().getName(), key);
+        long hash = hash(key);
+        Segment<V> segment = segmentFor(hash);
+        V oldValue = segment.get(key, hash, System.nanoTime());
+        if (null == oldValue) {
+            try {
+                load(key, hash);
+            } catch (Exception e) {
+                log.warn("[{}] refresh key:{} error", this.getClass().getName(), key, e);
+            }
+        } else if (segment.markRefreshing(key, hash)) {
+            reload(segment, key, hash, oldValue);
+        }
+    }
+
+    public void invalidateAll() {
+        log.info("[{}] invalidate all cache entity", this.getClass().getName());
+        for (Segment<V> segment : segments) {
+            segment.clear();
+        }
+    }
+
+    /**
+     * 緩存元素個數(含尚未清理的過期元素)
+     */
+    public long size() {
+        long size = 0;
+        for (Segment<V> segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * 未過期元素快照, 會裝箱Key 僅用於排查
+     */
+    public Map<Long, V> asMap() {
+        Map<Long, V> snapshot = new HashMap<>();
+        long now = System.nanoTime();
+        for (Segment<V> segment : segments) {
+            segment.copyTo(snapshot, now);
+        }
+        return snapshot;
+    }
+
+    /**
+     * 未命中時加載, 同一Key併發請求只加載一次
+     */
+    private V load(long key, long hash) throws ExecutionException {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = loading.putIfAbsent(key, future);
+        if (null != existing) {
+            return awaitLoading(existing);
+        }
+        try {
+            Segment<V> segment = segmentFor(hash);
+            // 其他線程可能剛加載完成
+            V value = segment.get(key, hash, System.nanoTime());
+            if (null == value) {
+                value = loadData(key);
+                if (null == value) {
+                    throw new CacheLoader.InvalidCacheLoadException("CacheLoader returned null for key " + key + ".");
+                }
+                segment.put(key, hash, value, System.nanoTime());
+            }
+            future.complete(value);
+            return value;
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+            throw wrapLoadException(t);
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    private V awaitLoading(CompletableFuture<V> future) throws ExecutionException {
+        try {
+            return Uninterruptibles.getUninterruptibly(future);
+        } catch (ExecutionException e) {
+            throw wrapLoadException(e.getCause());
+        }
+    }
+
+    /**
+     * 與{@code LoadingCache#get}保持一致的異常包裝
+     */
+    private static RuntimeException wrapLoadException(Throwable t) throws ExecutionException {
+        if (t instanceof CacheLoader.InvalidCacheLoadException) {
+            return (CacheLoader.InvalidCacheLoadException) t;
+        }
+        if (t instanceof Error) {
+            throw new ExecutionError((Error) t);
+        }
+        if (t instanceof RuntimeException) {
+            return new UncheckedExecutionException(t);
+        }
+        throw new ExecutionException(t);
+    }
+
+    /**
+     * 刷新: 刷新期間繼續返回舊值, 失敗時保留舊值
+     *
+     * @return 同步完成時返回新值, 否則返回舊值
+     */
+    private V reload(Segment<V> segment, long key, long hash, V oldValue) {
+        ListenableFuture<V> future;
+        try {
+            future = reloadData(key, oldValue);
+        } catch (Throwable t) {
+            log.warn("[{}] reload key:{} error", this.getClass().getName(), key, t);
+            segment.clearRefreshing(key, hash);
+            return oldValue;
+        }
+        future.addListener(() -> {
+            try {
+                V newValue = Futures.getDone(future);
+                if (null != newValue) {
+                    segment.put(key, hash, newValue, System.nanoTime());
+                    return;
+                }
+            } catch (Throwable t) {
+                log.warn("[{}] reload key:{} error", this.getClass().getName(), key, t);
+            }
+            segment.clearRefreshing(key, hash);
+        }, MoreExecutors.directExecutor());
+        if (future.isDone()) {
+            try {
+                V newValue = Futures.getDone(future);
+                return null != newValue ? newValue : oldValue;
+            } catch (Throwable t) {
+                return oldValue;
+            }
+        }
+        return oldValue;
+    }
+
+    private Segment<V> segmentFor(long hash) {
+        return segments[(int) (hash >>> (Long.SIZE - SEGMENT_SHIFT))];
+    }
+
+    private static long hash(long key) {
+        // murmur3 fmix64
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * 開放定址表, 擴容時整體替換
+     */
+    private static final class Table {
+        private final long[] keys;
+        private final Object[] values;
+        private final long[] writeNanos;
+        private final long[] accessNanos;
+        private final byte[] states;
+        private final boolean[] refreshing;
+        private final int mask;
+        private final int threshold;
+
+        private Table(int capacity) {
+            int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+            this.keys = new long[size];
+            this.values = new Object[size];
+            this.writeNanos = new long[size];
+            this.accessNanos = new long[size];
+            this.states = new byte[size];
+            this.refreshing = new boolean[size];
+            this.mask = size - 1;
+            this.threshold = size * 3 / 4;
+        }
+
+        /**
+         * 查找Key所在位置, 不存在返回-1
+         */
+        private int indexOf(long key, long hash) {
+            int index = (int) hash & mask;
+            for (int probes = 0; probes <= mask; probes++) {
+                byte state = states[index];
+                if (state == EMPTY) {
+                    return -1;
+                }
+                if (state == FULL && keys[index] == key) {
+                    return index;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+    }
+
+    /**
+     * 分段: 讀為樂觀讀, 寫加寫鎖
+     */
+    private static final class Segment<V> extends StampedLock {
+        private static final long serialVersionUID = 1L;
+
+        private final AbstractLongKeyCache<V> cache;
+        private final int initialCapacity;
+        private final int maxSize;
+        private Table table;
+        /** FULL元素個數 **/
+        private int size;
+        /** FULL + DELETED 個數 **/
+        private int used;
+
+        private Segment(AbstractLongKeyCache<V> cache, int initialCapacity, int maxSize) {
+            this.cache = cache;
+            this.initialCapacity = initialCapacity;
+            this.maxSize = maxSize;
+            this.table = new Table(capacityFor(initialCapacity));
+        }
+
+        /**
+         * 獲取未過期的值, 到達刷新時間時觸發刷新
+         */
+        @SuppressWarnings("unchecked")
+        private V get(long key, long hash, long now) {
+            long stamp = tryOptimisticRead();
+            Table t = table;
+            int index = t.indexOf(key, hash);
+            Object value = index < 0 ? null : t.values[index];
+            long written = index < 0 ? 0 : t.writeNanos[index];
+            long accessed = index < 0 ? 0 : t.accessNanos[index];
+            if (!validate(stamp)) {
+                stamp = readLock();
+                try {
+                    t = table;
+                    index = t.indexOf(key, hash);
+                    value = index < 0 ? null : t.values[index];
+                    written = index < 0 ? 0 : t.writeNanos[index];
+                    accessed = index < 0 ? 0 : t.accessNanos[index];
+                } finally {
+                    unlockRead(stamp);
+                }
+            }
+            if (null == value || isExpired(written, accessed, now)) {
+                return null;
+            }
+            // 訪問時間允許丟失更新
+            t.accessNanos[index] = now;
+            if (cache.refreshAfterWriteNanos > 0 && now - written > cache.refreshAfterWriteNanos && markRefreshing(key, hash)) {
+                return cache.reload(this, key, hash, (V) value);
+            }
+            return (V) value;
+        }
+
+        private void put(long key, long hash, Object value, long now) {
+            long stamp = writeLock();
+            try {
+                Table t = table;
+                int index = t.indexOf(key, hash);
+                if (index < 0) {
+                    if (size >= maxSize) {
+                        evictOne(t, now);
+                    }
+                    if (used + 1 > t.threshold) {
+                        t = rehash(now);
+                    }
+                    index = insertIndex(t, hash);
+                    if (t.states[index] == EMPTY) {
+                        used++;
+                    }
+                    t.keys[index] = key;
+                    t.states[index] = FULL;
+                    size++;
+                }
+                t.values[index] = value;
+                t.writeNanos[index] = now;
+                t.accessNanos[index] = now;
+                t.refreshing[index] = false;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * 標記刷新中, 已在刷新時返回false
+         */
+        private boolean markRefreshing(long key, long hash) {
+            long stamp = writeLock();
+            try {
+                int index = table.indexOf(key, hash);
+                if (index < 0 || table.refreshing[index]) {
+                    return false;
+                }
+                table.refreshing[index] = true;
+                return true;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private void clearRefreshing(long key, long hash) {
+            long stamp = writeLock();
+            try {
+                int index = table.indexOf(key, hash);
+                if (index >= 0) {
+                    table.refreshing[index] = false;
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        private void clear() {
+            long stamp = writeLock();
+            try {
+                table = new Table(capacityFor(initialCapacity));
+                size = 0;
+                used = 0;
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private void copyTo(Map<Long, V> snapshot, long now) {
+            long stamp = readLock();
+            try {
+                Table t = table;
+                for (int i = 0; i <= t.mask; i++) {
+                    if (t.states[i] == FULL && !isExpired(t.writeNanos[i], t.accessNanos[i], now)) {
+                        snapshot.put(t.keys[i], (V) t.values[i]);
+                    }
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        private boolean isExpired(long written, long accessed, long now) {
+            return (cache.expireAfterAccessNanos > 0 && now - accessed > cache.expireAfterAccessNanos)
+                    || (cache.expireAfterWriteNanos > 0 && now - written > cache.expireAfterWriteNanos);
+        }
+
+        /**
+         * 從隨機位置採樣, 淘汰已過期或最久未訪問的元素
+         */
+        private void evictOne(Table t, long now) {
+            int index = ThreadLocalRandom.current().nextInt(t.mask + 1);
+            int victim = -1;
+            int sampled = 0;
+            for (int probes = 0; probes <= t.mask && sampled < EVICTION_SAMPLES; probes++, index = (index + 1) & t.mask) {
+                if (t.states[index] != FULL) {
+                    continue;
+                }
+                if (isExpired(t.writeNanos[index], t.accessNanos[index], now)) {
+                    victim = index;
+                    break;
+                }
+                if (victim < 0 || t.accessNanos[index] - t.accessNanos[victim] < 0) {
+                    victim = index;
+                }
+                sampled++;
+            }
+            if (victim >= 0) {
+                t.states[victim] = DELETED;
+                t.values[victim] = null;
+                t.refreshing[victim] = false;
+                size--;
+            }
+        }
+
+        /**
+         * 重建表以清理DELETED及過期元素, 元素較多時擴容
+         */
+        private Table rehash(long now) {
+            Table old = table;
+            int capacity = old.mask + 1;
+            Table t = new Table(size + 1 > capacity / 2 ? capacity * 2 : capacity);
+            size = 0;
+            for (int i = 0; i <= old.mask; i++) {
+                if (old.states[i] != FULL || isExpired(old.writeNanos[i], old.accessNanos[i], now)) {
+                    continue;
+                }
+                size++;
+                int index = insertIndex(t, hash(old.keys[i]));
+                t.keys[index] = old.keys[i];
+                t.values[index] = old.values[i];
+                t.writeNanos[index] = old.writeNanos[i];
+                t.accessNanos[index] = old.accessNanos[i];
+                t.refreshing[index] = old.refreshing[i];
+                t.states[index] = FULL;
+            }
+            table = t;
+            used = size;
+            return t;
+        }
+
+        /**
+         * 新Key的插入位置: 探測路徑上第一個EMPTY或DELETED
+         */
+        private int insertIndex(Table t, long hash) {
+            int index = (int) hash & t.mask;
+            while (t.states[index] == FULL) {
+                index = (index + 1) & t.mask;
+            }
+            return index;
+        }
+
+        private int capacityFor(int expectedSize) {
+            return (int) Math.min((long) expectedSize * 4 / 3 + 1, 1 << 30);
+        }
+    }
+}
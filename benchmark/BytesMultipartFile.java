@@ -0,0 +1,63 @@
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+
+/**
+ * @Description 基于内存字节数组的{@link MultipartFile}, 压测时模拟上传文件
+ * @Date 2022/5/9
+ * @author mingzhe.xiang
+ */
+public class BytesMultipartFile implements MultipartFile {
+
+    private final String originalFilename;
+    private final byte[] content;
+
+    public BytesMultipartFile(String originalFilename, byte[] content) {
+        this.originalFilename = originalFilename;
+        this.content = content;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public String getOriginalFilename() {
+        return originalFilename;
+    }
+
+    @Override
+    public String getContentType() {
+        return "text/csv";
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return content.length == 0;
+    }
+
+    @Override
+    public long getSize() {
+        return content.length;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return content;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new ByteArrayInputStream(content);
+    }
+
+    @Override
+    public void transferTo(File dest) throws IOException {
+        Files.write(dest.toPath(), content);
+    }
+}
@@ -0,0 +1,530 @@
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.MappedByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * @Description 异步导入导出压测
+ * <pre>
+ * 使用{@link MapRedisTemplate}代替Redis(经{@link RedisTaskStatusStore}编解码)、{@link LocalTransactionStation}代替Azure, 由合成数据驱动
+ * {@link AbstractHandler#upload}/{@link AbstractHandler#download}经{@link ExcelHandlerExecutors}端到端执行,
+ * 输出吞吐量、各阶段耗时分位数、堆内存/堆外内存峰值及临时文件磁盘占用峰值。
+ *
+ * 参数(System Property):
+ *   bench.tasks          压测任务数, 默认200
+ *   bench.warmup         预热任务数(不计入结果), 默认20
+ *   bench.concurrency    并发提交线程数, 默认16
+ *   bench.uploadRatio    导入任务占比, 默认0.5
+ *   bench.rows           每个文件数据行数, 默认20000
+ *   bench.cols           列数, 默认10
+ *   bench.cellWidth      单元格字符数, 默认8
+ *   bench.shardRows      分片导入每片行数, 0为不分片, 默认0
+ *   bench.countMode      导出数量限制方式 COUNT_FIRST/CONCURRENT, 不设置则不限制
+ *   bench.memoryThreshold 导出暂存内存上限(字节), 默认4MB
+ *   bench.durable        是否启用持久化任务队列, 默认false
+ *   bench.redisLatencyMicros 模拟Redis单次读写往返耗时(微秒), 默认0
+ *   bench.compactStatus  任务状态是否以紧凑编码写入, 默认true
+ *   bench.mart           任务mart
+ *   bench.dir            工作目录, 默认./excel-bench, 结束后删除
+ *
+ * 如: java -Dbench.tasks=500 -Dbench.rows=100000 -Dbench.shardRows=20000 ExcelHandlerBenchmark
+ * </pre>
+ * @Date 2022/5/9
+ * @author mingzhe.xiang
+ */
+@Slf4j
+public class ExcelHandlerBenchmark {
+
+    private static final String IMPORT_NAME = "bench-import.csv";
+    private static final String EXPORT_NAME = "bench-export.csv";
+    private static final long POLL_INTERVAL_MILLIS = 5L;
+    private static final long TASK_TIMEOUT_MILLIS = 10 * 60 * 1000L;
+    private static final long SAMPLE_INTERVAL_MILLIS = 20L;
+    private static final double MB = 1024 * 1024;
+
+    public static void main(String[] args) throws Exception {
+        int tasks = Integer.getInteger("bench.tasks", 200);
+        int warmup = Integer.getInteger("bench.warmup", 20);
+        int concurrency = Integer.getInteger("bench.concurrency", 16);
+        double uploadRatio = Double.parseDouble(System.getProperty("bench.uploadRatio", "0.5"));
+        int rows = Integer.getInteger("bench.rows", 20000);
+        int cols = Integer.getInteger("bench.cols", 10);
+        int cellWidth = Integer.getInteger("bench.cellWidth", 8);
+        int shardRows = Integer.getInteger("bench.shardRows", 0);
+        String countMode = System.getProperty("bench.countMode");
+        long memoryThreshold = Long.getLong("bench.memoryThreshold", 4 * 1024 * 1024L);
+        boolean durable = Boolean.getBoolean("bench.durable");
+        long redisLatencyMicros = Long.getLong("bench.redisLatencyMicros", 0L);
+        boolean compactStatus = Boolean.parseBoolean(System.getProperty("bench.compactStatus", "true"));
+        String mart = System.getProperty("bench.mart");
+        Path workDir = Paths.get(System.getProperty("bench.dir", "excel-bench")).toAbsolutePath();
+
+        Path stagingDir = workDir.resolve("staging");
+        Path stationDir = workDir.resolve("station");
+        SyntheticDataGenerator generator = new SyntheticDataGenerator(rows, cols, cellWidth);
+        byte[] uploadData = generator.generate();
+
+        Metrics metrics = new Metrics();
+        BenchStation station = new BenchStation(stationDir.toString(), metrics);
+        MapRedisTemplate redis = new MapRedisTemplate(redisLatencyMicros);
+        TaskStatusStore statusStore = new RedisTaskStatusStore(redis, compactStatus);
+        SyntheticHandler syntheticHandler = new SyntheticHandler(station, statusStore, generator, metrics,
+                null == countMode ? null : AbstractHandler.CountLimitMode.valueOf(countMode), memoryThreshold, stagingDir);
+        AbstractHandler handler = shardRows > 0
+                ? new ShardedSyntheticHandler(station, statusStore, syntheticHandler, shardRows)
+                : syntheticHandler;
+        if (durable) {
+            ExcelHandlerExecutors.enableDurableQueue(new LocalDurableTaskQueue(workDir.resolve("queue"), 60 * 1000L),
+                    AbstractHandler::resolveRecoveredTask);
+        }
+
+        try {
+            Driver driver = new Driver(handler, metrics, uploadData, uploadRatio, mart);
+            driver.run(warmup, concurrency);
+            metrics.reset();
+            redis.resetStats();
+
+            ResourceSampler sampler = new ResourceSampler(stagingDir, stationDir);
+            sampler.start();
+            long start = System.nanoTime();
+            driver.run(tasks, concurrency);
+            long elapsed = System.nanoTime() - start;
+            sampler.stop();
+
+            System.out.println("==== ExcelHandler benchmark ====");
+            System.out.printf("tasks=%d concurrency=%d uploadRatio=%.2f rows=%d cols=%d fileSize=%.2fMB shardRows=%d countMode=%s memoryThreshold=%d durable=%s redisLatencyMicros=%d compactStatus=%s%n",
+                    tasks, concurrency, uploadRatio, rows, cols, uploadData.length / MB, shardRows, countMode, memoryThreshold, durable, redisLatencyMicros, compactStatus);
+            System.out.printf("throughput: %.2f tasks/sec, elapsed: %.2fs, done: %d, failed: %d, timeout: %d%n",
+                    tasks / (elapsed / 1e9), elapsed / 1e9, metrics.done.get(), metrics.failed.get(), metrics.timeout.get());
+            System.out.printf("%-18s %8s %10s %10s %10s %10s%n", "phase", "count", "p50(ms)", "p90(ms)", "p99(ms)", "max(ms)");
+            for (Map.Entry<String, LatencyRecorder> entry : new TreeMap<>(metrics.phases).entrySet()) {
+                LatencyRecorder recorder = entry.getValue();
+                System.out.printf("%-18s %8d %10.2f %10.2f %10.2f %10.2f%n", entry.getKey(), recorder.count(),
+                        recorder.percentileMillis(50), recorder.percentileMillis(90), recorder.percentileMillis(99), recorder.percentileMillis(100));
+            }
+            System.out.printf("peak heap used: %.2fMB, peak direct memory: %.2fMB, peak temp disk: %.2fMB, exported: %.2fMB%n",
+                    sampler.peakHeap / MB, sampler.peakDirect / MB, sampler.peakDisk / MB, metrics.exportBytes.get() / MB);
+            System.out.printf("redis get: %d, set: %d (%.2f/task), avg set value: %.1f bytes%n", redis.gets.get(), redis.sets.get(),
+                    (double) redis.sets.get() / tasks, redis.sets.get() == 0 ? 0 : (double) redis.setBytes.get() / redis.sets.get());
+        } finally {
+            ExcelHandlerExecutors.shutdown();
+            deleteRecursively(workDir);
+        }
+    }
+
+    /**
+     * 并发提交任务并轮询任务状态直到结束
+     */
+    private static class Driver {
+        private final AbstractHandler handler;
+        private final Metrics metrics;
+        private final byte[] uploadData;
+        private final double uploadRatio;
+        private final String mart;
+
+        private Driver(AbstractHandler handler, Metrics metrics, byte[] uploadData, double uploadRatio, String mart) {
+            this.handler = handler;
+            this.metrics = metrics;
+            this.uploadData = uploadData;
+            this.uploadRatio = uploadRatio;
+            this.mart = mart;
+        }
+
+        private void run(int tasks, int concurrency) throws InterruptedException {
+            AtomicInteger remaining = new AtomicInteger(tasks);
+            ExecutorService drivers = Executors.newFixedThreadPool(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                drivers.execute(() -> {
+                    while (remaining.getAndDecrement() > 0) {
+                        try {
+                            runOne(ThreadLocalRandom.current().nextDouble() < uploadRatio);
+                        } catch (Exception e) {
+                            log.error("benchmark task error", e);
+                            metrics.failed.incrementAndGet();
+                        }
+                    }
+                });
+            }
+            drivers.shutdown();
+            drivers.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        }
+
+        private void runOne(boolean upload) throws InterruptedException {
+            UserBaseInfo userBaseInfo = new UserBaseInfo();
+            userBaseInfo.setUserName("benchmark");
+            TaskParam taskParam = TaskParam.builder().mart(mart).language("zh_CN").userBaseInfo(userBaseInfo).build();
+
+            long submitTime = System.nanoTime();
+            metrics.submitTimes.put(userBaseInfo, submitTime);
+            String taskKey = upload
+                    ? handler.upload(new BytesMultipartFile(IMPORT_NAME, uploadData), taskParam)
+                    : handler.download(null, EXPORT_NAME, taskParam);
+            metrics.record("submit", System.nanoTime() - submitTime);
+
+            long deadline = System.currentTimeMillis() + TASK_TIMEOUT_MILLIS;
+            while (true) {
+                int status = handler.checkTaskStatus(taskKey).getStatus();
+                if (status == TaskResultVo.TaskStatus.DONE.getVal()) {
+                    metrics.done.incrementAndGet();
+                    break;
+                }
+                if (status != TaskResultVo.TaskStatus.RUNNING.getVal()) {
+                    metrics.failed.incrementAndGet();
+                    break;
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    metrics.timeout.incrementAndGet();
+                    break;
+                }
+                Thread.sleep(POLL_INTERVAL_MILLIS);
+            }
+            metrics.submitTimes.remove(userBaseInfo);
+            metrics.record(upload ? "upload.total" : "download.total", System.nanoTime() - submitTime);
+        }
+    }
+
+    /**
+     * 合成数据Handler: 导入逐行解析CSV, 导出写出合成数据
+     */
+    private static class SyntheticHandler extends AbstractHandler {
+        private final SyntheticDataGenerator generator;
+        private final Metrics metrics;
+        private final CountLimitMode countMode;
+        private final long memoryThreshold;
+        private final Path stagingDir;
+
+        private SyntheticHandler(TransactionStation station, TaskStatusStore statusStore, SyntheticDataGenerator generator, Metrics metrics,
+                                 CountLimitMode countMode, long memoryThreshold, Path stagingDir) {
+            super(station, statusStore);
+            this.generator = generator;
+            this.metrics = metrics;
+            this.countMode = countMode;
+            this.memoryThreshold = memoryThreshold;
+            this.stagingDir = stagingDir;
+        }
+
+        @Override
+        protected TaskResultVo handleUploadData(InputStream inputStream, TaskParam taskParam) throws Exception {
+            metrics.markStart(taskParam);
+            long start = System.nanoTime();
+            long cells = 0;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+            String line;
+            while (null != (line = reader.readLine())) {
+                cells += line.split(",").length;
+            }
+            metrics.record("upload.handle", System.nanoTime() - start);
+            return cells > 0 ? TaskResultVo.doneResult(new CxBatchResult()) : TaskResultVo.failedResult("empty");
+        }
+
+        @Override
+        protected void handleDownloadData(OutputStream outputStream, TaskParam taskParam) throws Exception {
+            metrics.markStart(taskParam);
+            long start = System.nanoTime();
+            generator.writeTo(outputStream);
+            metrics.record("download.handle", System.nanoTime() - start);
+        }
+
+        @Override
+        protected boolean supportCountLimit() {
+            return null != countMode;
+        }
+
+        @Override
+        protected CountLimitMode countLimitMode() {
+            return countMode;
+        }
+
+        @Override
+        protected int countThreshold() {
+            return generator.getRows();
+        }
+
+        @Override
+        protected int count(CxBaseQuery query, int limit) {
+            return Math.min(generator.getRows(), limit);
+        }
+
+        @Override
+        protected long stagingMemoryThreshold() {
+            return memoryThreshold;
+        }
+
+        @Override
+        protected String stagingTempDir() {
+            return stagingDir.toString();
+        }
+    }
+
+    /**
+     * 分片导入的合成数据Handler: 按行切分CSV, 其余处理委托{@link SyntheticHandler}
+     */
+    private static class ShardedSyntheticHandler extends AbstractShardedHandler {
+        private final SyntheticHandler delegate;
+        private final int shardRows;
+
+        private ShardedSyntheticHandler(TransactionStation station, TaskStatusStore statusStore, SyntheticHandler delegate, int shardRows) {
+            super(station, statusStore);
+            this.delegate = delegate;
+            this.shardRows = shardRows;
+        }
+
+        @Override
+        protected List<UploadShard> splitUpload(MappedByteBuffer data, TaskParam taskParam) {
+            return UploadShard.splitByLines(data, 1, shardRows);
+        }
+
+        @Override
+        protected TaskResultVo mergeUploadResults(List<TaskResultVo> results, TaskParam taskParam) {
+            return TaskResultVo.doneResult(new CxBatchResult());
+        }
+
+        @Override
+        protected TaskResultVo handleUploadData(InputStream inputStream, TaskParam taskParam) throws Exception {
+            return delegate.handleUploadData(inputStream, taskParam);
+        }
+
+        @Override
+        protected void handleDownloadData(OutputStream outputStream, TaskParam taskParam) throws Exception {
+            delegate.handleDownloadData(outputStream, taskParam);
+        }
+
+        @Override
+        protected boolean supportCountLimit() {
+            return delegate.supportCountLimit();
+        }
+
+        @Override
+        protected CountLimitMode countLimitMode() {
+            return delegate.countLimitMode();
+        }
+
+        @Override
+        protected int countThreshold() {
+            return delegate.countThreshold();
+        }
+
+        @Override
+        protected int count(CxBaseQuery query, int limit) {
+            return delegate.count(query, limit);
+        }
+
+        @Override
+        protected long stagingMemoryThreshold() {
+            return delegate.stagingMemoryThreshold();
+        }
+
+        @Override
+        protected String stagingTempDir() {
+            return delegate.stagingTempDir();
+        }
+    }
+
+    /**
+     * 导出结果只读取不落盘, 导入文件(持久化模式)正常写入本地中转站
+     */
+    private static class BenchStation extends LocalTransactionStation {
+        private final Metrics metrics;
+
+        private BenchStation(String directory, Metrics metrics) throws IOException {
+            super(directory);
+            this.metrics = metrics;
+        }
+
+        @Override
+        public String pushResourceToStation(StationResource resource) throws Exception {
+            long start = System.nanoTime();
+            try {
+                if (!resource.getName().startsWith("bench-export")) {
+                    return super.pushResourceToStation(resource);
+                }
+                byte[] buf = new byte[64 * 1024];
+                long bytes = 0;
+                int n;
+                while ((n = resource.getData().read(buf)) != -1) {
+                    bytes += n;
+                }
+                metrics.exportBytes.addAndGet(bytes);
+                return resource.getName();
+            } finally {
+                metrics.record("station.push", System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class Metrics {
+        private final Map<String, LatencyRecorder> phases = new ConcurrentHashMap<>();
+        /** 按用户信息对象(每个任务独立创建, 导出时任务参数会被复制)记录提交时间, 用于统计排队耗时 **/
+        private final Map<UserBaseInfo, Long> submitTimes = Collections.synchronizedMap(new IdentityHashMap<>());
+        private final AtomicInteger done = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final AtomicInteger timeout = new AtomicInteger();
+        private final AtomicLong exportBytes = new AtomicLong();
+
+        private void record(String phase, long nanos) {
+            phases.computeIfAbsent(phase, k -> new LatencyRecorder()).record(nanos);
+        }
+
+        /**
+         * 任务开始执行, 仅首次调用记录排队耗时(分片导入会多次调用)
+         */
+        private void markStart(TaskParam taskParam) {
+            Long submitTime = submitTimes.remove(taskParam.getUserBaseInfo());
+            if (null != submitTime) {
+                record("queue.wait", System.nanoTime() - submitTime);
+            }
+        }
+
+        private void reset() {
+            phases.clear();
+            done.set(0);
+            failed.set(0);
+            timeout.set(0);
+            exportBytes.set(0);
+        }
+    }
+
+    private static class LatencyRecorder {
+        private long[] values = new long[1024];
+        private int size;
+
+        private synchronized void record(long nanos) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = nanos;
+        }
+
+        private synchronized int count() {
+            return size;
+        }
+
+        private synchronized double percentileMillis(int percentile) {
+            if (size == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100.0 * size) - 1;
+            return sorted[Math.max(index, 0)] / 1e6;
+        }
+    }
+
+    /**
+     * 定时采样堆内存、堆外内存及暂存/中转站目录磁盘占用峰值
+     */
+    private static class ResourceSampler {
+        private final List<Path> directories;
+        private final Thread thread;
+        private volatile boolean running = true;
+        private long peakHeap;
+        private long peakDirect;
+        private long peakDisk;
+
+        private ResourceSampler(Path... directories) {
+            this.directories = Arrays.asList(directories);
+            this.thread = new Thread(this::sampleLoop, "BenchResourceSampler");
+            this.thread.setDaemon(true);
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+
+        private void sampleLoop() {
+            BufferPoolMXBean directPool = ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class).stream()
+                    .filter(pool -> "direct".equals(pool.getName())).findFirst().orElse(null);
+            while (running) {
+                peakHeap = Math.max(peakHeap, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+                if (null != directPool) {
+                    peakDirect = Math.max(peakDirect, directPool.getMemoryUsed());
+                }
+                long disk = 0;
+                for (Path directory : directories) {
+                    disk += directorySize(directory);
+                }
+                peakDisk = Math.max(peakDisk, disk);
+                try {
+                    Thread.sleep(SAMPLE_INTERVAL_MILLIS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private static long directorySize(Path directory) {
+        if (!Files.exists(directory)) {
+            return 0;
+        }
+        AtomicLong size = new AtomicLong();
+        try {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    size.addAndGet(attrs.size());
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    // 采样期间文件可能已被删除
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("benchmark directory size error:{}", directory, e);
+        }
+        return size.get();
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                Files.deleteIfExists(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                Files.deleteIfExists(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+}
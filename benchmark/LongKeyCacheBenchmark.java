@@ -0,0 +1,164 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * @Description {@link AbstractLongKeyCache}与{@link AbstractGuavaCache}(装箱Long Key)对比压测
+ * <pre>
+ * 分别填充{@code bench.entries}个元素(容量上限为其2倍, 避免分段淘汰), 统计填充后的堆占用, 再以{@code bench.threads}个线程随机命中读取,
+ * 输出每次读取耗时及吞吐量。所有元素共享同一个Value对象, 堆占用差异即Key与节点开销。
+ *
+ * 参数(System Property):
+ *   bench.entries   元素个数, 默认1000000
+ *   bench.reads     每线程读取次数, 默认10000000
+ *   bench.threads   读取线程数, 默认4
+ *
+ * 如: java -Xmx2g -Dbench.entries=2000000 LongKeyCacheBenchmark
+ * </pre>
+ * @Date 2022/5/23
+ * @author mingzhe.xiang
+ */
+public class LongKeyCacheBenchmark {
+
+    private static final String VALUE = "value";
+
+    public static void main(String[] args) throws Exception {
+        int entries = Integer.getInteger("bench.entries", 1000000);
+        int reads = Integer.getInteger("bench.reads", 10000000);
+        int threads = Integer.getInteger("bench.threads", 4);
+
+        System.out.println("==== LongKeyCache benchmark ====");
+        System.out.printf("entries=%d reads/thread=%d threads=%d%n", entries, reads, threads);
+
+        long before = usedHeap();
+        BoxedCache boxed = new BoxedCache(entries);
+        boxed.afterPropertiesSet();
+        for (long key = 0; key < entries; key++) {
+            boxed.getValue(key);
+        }
+        long boxedHeap = usedHeap() - before;
+        report("boxed", boxedHeap, entries, read(threads, reads, entries, key -> boxed.getValue(key)));
+        boxed.invalidateAll();
+
+        before = usedHeap();
+        PrimitiveCache primitive = new PrimitiveCache(entries);
+        primitive.afterPropertiesSet();
+        for (long key = 0; key < entries; key++) {
+            primitive.getValue(key);
+        }
+        long primitiveHeap = usedHeap() - before;
+        report("primitive", primitiveHeap, entries, read(threads, reads, entries, primitive::getValue));
+        primitive.invalidateAll();
+    }
+
+    private static void report(String name, long heap, int entries, double nanosPerRead) {
+        System.out.printf("%-10s heap: %8.2fMB (%6.1f bytes/entry), read: %6.2f ns/op, %8.2f Mops/s per thread%n",
+                name, heap / 1024.0 / 1024.0, (double) heap / entries, nanosPerRead, 1000 / nanosPerRead);
+    }
+
+    /**
+     * 多线程随机读取(全部命中), 返回平均每次读取纳秒数
+     */
+    private static double read(int threads, int reads, int entries, Reader reader) throws Exception {
+        // 预热
+        readLoop(reader, reads / 10, entries, 7);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<Long>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            long seed = t * 31L + 1;
+            futures.add(pool.submit(() -> {
+                long start = System.nanoTime();
+                readLoop(reader, reads, entries, seed);
+                return System.nanoTime() - start;
+            }));
+        }
+        long total = 0;
+        for (Future<Long> future : futures) {
+            total += future.get();
+        }
+        pool.shutdown();
+        pool.awaitTermination(1, TimeUnit.MINUTES);
+        return (double) total / threads / reads;
+    }
+
+    private static void readLoop(Reader reader, int reads, int entries, long seed) throws ExecutionException {
+        long x = seed;
+        int misses = 0;
+        for (int i = 0; i < reads; i++) {
+            // xorshift 避免Random的同步与分配
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            if (reader.read(Math.floorMod(x, entries)) != VALUE) {
+                misses++;
+            }
+        }
+        if (misses > 0) {
+            throw new IllegalStateException("unexpected misses:" + misses);
+        }
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private interface Reader {
+        Object read(long key) throws ExecutionException;
+    }
+
+    private static class BoxedCache extends AbstractGuavaCache<Long, String> {
+        private final int entries;
+
+        private BoxedCache(int entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        protected CacheBuilder<Object, Object> newBuilder() {
+            return CacheBuilder.newBuilder()
+                    .initialCapacity(entries)
+                    .maximumSize(entries * 2L)
+                    .expireAfterAccess(60, TimeUnit.MINUTES);
+        }
+
+        @Override
+        protected String loadData(Long key) {
+            return VALUE;
+        }
+    }
+
+    private static class PrimitiveCache extends AbstractLongKeyCache<String> {
+        private final int entries;
+
+        private PrimitiveCache(int entries) {
+            this.entries = entries;
+        }
+
+        @Override
+        protected int initialCapacity() {
+            return entries;
+        }
+
+        @Override
+        protected long maximumSize() {
+            return entries * 2L;
+        }
+
+        @Override
+        protected String loadData(long key) {
+            return VALUE;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * @Description 基于内存Map的{@link RedisTemplate}, 压测时代替Redis
+ * <p>支持过期时间, 可模拟每次读写的网络往返耗时, 并统计读写次数及写入字节数
+ * @Date 2022/5/9
+ * @author mingzhe.xiang
+ */
+public class MapRedisTemplate implements RedisTemplate<String> {
+
+    private final Map<String, Entry> values = new ConcurrentHashMap<>();
+    private final long latencyNanos;
+
+    final AtomicLong gets = new AtomicLong();
+    final AtomicLong sets = new AtomicLong();
+    final AtomicLong setBytes = new AtomicLong();
+
+    /**
+     * @param latencyMicros 模拟每次读写的往返耗时(微秒), 0为不模拟
+     */
+    public MapRedisTemplate(long latencyMicros) {
+        this.latencyNanos = TimeUnit.MICROSECONDS.toNanos(latencyMicros);
+    }
+
+    @Override
+    public String get(String key) {
+        gets.incrementAndGet();
+        roundTrip();
+        Entry entry = values.get(key);
+        if (null == entry) {
+            return null;
+        }
+        if (entry.expireAtNanos - System.nanoTime() <= 0) {
+            values.remove(key, entry);
+            return null;
+        }
+        return entry.value;
+    }
+
+    @Override
+    public boolean set(String key, String value, long timeOutSec) {
+        sets.incrementAndGet();
+        setBytes.addAndGet(value.length());
+        roundTrip();
+        values.put(key, new Entry(value, System.nanoTime() + TimeUnit.SECONDS.toNanos(timeOutSec)));
+        return true;
+    }
+
+    void resetStats() {
+        gets.set(0);
+        sets.set(0);
+        setBytes.set(0);
+    }
+
+    private void roundTrip() {
+        if (latencyNanos > 0) {
+            LockSupport.parkNanos(latencyNanos);
+        }
+    }
+
+    private static class Entry {
+        private final String value;
+        private final long expireAtNanos;
+
+        private Entry(String value, long expireAtNanos) {
+            this.value = value;
+            this.expireAtNanos = expireAtNanos;
+        }
+    }
+}
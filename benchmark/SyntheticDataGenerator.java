@@ -0,0 +1,73 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @Description 压测数据生成
+ * <p>生成{@code rows}行 x {@code cols}列的CSV数据, 首行为表头, 每个单元格{@code cellWidth}个字符, 内容由行列号确定
+ * @Date 2022/5/9
+ * @author mingzhe.xiang
+ */
+public class SyntheticDataGenerator {
+
+    private static final char[] ALPHABET = "abcdefghijklmnopqrstuvwxyz0123456789".toCharArray();
+
+    private final int rows;
+    private final int cols;
+    private final int cellWidth;
+
+    public SyntheticDataGenerator(int rows, int cols, int cellWidth) {
+        this.rows = rows;
+        this.cols = cols;
+        this.cellWidth = cellWidth;
+    }
+
+    /**
+     * 生成完整数据
+     */
+    public byte[] generate() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream((int) Math.min(estimatedSize(), Integer.MAX_VALUE - 8));
+        try {
+            writeTo(out);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 逐行写出数据
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        StringBuilder line = new StringBuilder((cellWidth + 1) * cols + 1);
+        for (int c = 0; c < cols; c++) {
+            line.append(c == 0 ? "" : ",").append("col").append(c);
+        }
+        out.write(line.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+
+        byte[] buf = new byte[(cellWidth + 1) * cols];
+        for (int r = 0; r < rows; r++) {
+            int pos = 0;
+            for (int c = 0; c < cols; c++) {
+                int seed = r * 31 + c;
+                for (int i = 0; i < cellWidth; i++) {
+                    buf[pos++] = (byte) ALPHABET[(seed + i * 7) % ALPHABET.length];
+                }
+                buf[pos++] = (byte) (c == cols - 1 ? '\n' : ',');
+            }
+            out.write(buf, 0, pos);
+        }
+    }
+
+    /**
+     * 预估数据大小(字节)
+     */
+    public long estimatedSize() {
+        return (long) (cellWidth + 1) * cols * (rows + 1);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+}
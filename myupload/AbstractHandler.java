@@ -1,13 +1,32 @@
 import com.alibaba.fastjson.JSON;
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.Uninterruptibles;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.springframework.util.ClassUtils;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * @author mingzhe.xiang
@@ -17,7 +36,7 @@ import java.util.UUID;
 @Slf4j
 public abstract class AbstractHandler {
 
-    private RedisTemplate<String> cxRedisTemplate;
+    private TaskStatusStore taskStatusStore;
     private TransactionStation transactionStation;
     /**
      * RedisKey 此处无需复杂fmt CxRedisTemplate自动增强命名
@@ -29,11 +48,39 @@ public abstract class AbstractHandler {
      * 默认单次导出行数
      **/
     private static final int COUNT_PER_DEFAULT = 50000;
+    /**
+     * 默认导出暂存内存上限 4MB
+     **/
+    private static final long STAGING_MEMORY_DEFAULT = 4 * 1024 * 1024L;
+    /**
+     * 已实例化的Handler, 用于还原持久化任务
+     **/
+    private static final Map<String, AbstractHandler> HANDLERS = new ConcurrentHashMap<>();
+    /**
+     * 所有Handler共享的默认任务状态存储
+     **/
+    private static volatile TaskStatusStore defaultTaskStatusStore;
 
-    @SuppressWarnings("unchecked")
     public AbstractHandler(TransactionStation transactionStation) {
+        this(transactionStation, defaultTaskStatusStore());
+    }
+
+    public AbstractHandler(TransactionStation transactionStation, TaskStatusStore taskStatusStore) {
         this.transactionStation = transactionStation;
-        this.cxRedisTemplate = (CxRedisTemplate<String>) ApplicationContextUtils.getBean("cxRedisTemplate");
+        this.taskStatusStore = taskStatusStore;
+        HANDLERS.putIfAbsent(handlerName(), this);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static TaskStatusStore defaultTaskStatusStore() {
+        if (null == defaultTaskStatusStore) {
+            synchronized (AbstractHandler.class) {
+                if (null == defaultTaskStatusStore) {
+                    defaultTaskStatusStore = new RedisTaskStatusStore((CxRedisTemplate<String>) ApplicationContextUtils.getBean("cxRedisTemplate"));
+                }
+            }
+        }
+        return defaultTaskStatusStore;
     }
 
     /**
@@ -53,39 +100,108 @@ public abstract class AbstractHandler {
         final String language = GlobalUtils.getLanguage();
         final String mart = MartContextManager.getCode();
 
-        // Redis设置任务状态
-        String taskKey = buildTaskKey();
         final TaskParam taskParam = TaskParam.builder().mart(mart).language(language).userBaseInfo(userBaseInfo).build();
-        // 执行上传操作
-        ExcelHandlerExecutors.execute(() -> executeUpload(file, taskKey, taskParam));
-        return taskKey;
+        return submitUpload(file, taskParam);
     }
 
     public String upload(MultipartFile file, TaskParam taskParam) {
         assert taskParam != null;
 
+        return submitUpload(file, taskParam);
+    }
+
+    /**
+     * 提交导入任务
+     *
+     * <p>启用持久化任务队列时, 上传文件先存入中转站再提交任务, 保证节点重启后任务仍可执行;
+     * 开启分片导入时, 上传文件先转存到本地暂存文件, 不依赖请求结束后可能被清理的multipart临时文件
+     *
+     * @param file      资源数据
+     * @param taskParam 任务参数对象
+     * @return 任务Key
+     */
+    private String submitUpload(MultipartFile file, TaskParam taskParam) {
         // Redis设置任务状态
         String taskKey = buildTaskKey();
-        // 执行上传操作
-        ExcelHandlerExecutors.execute(() -> executeUpload(file, taskKey, taskParam));
+        if (!ExcelHandlerExecutors.isDurable() && isShardedUpload()) {
+            Path stagedFile;
+            try {
+                stagedFile = spoolUpload(file::getInputStream, file.getOriginalFilename());
+            } catch (Exception e) {
+                log.error("AbstractHandler spool upload error taskKey:{}", taskKey, e);
+                taskStatusStore.update(taskKey, TaskResultVo.failedResult(), RESULT_EXPIRE_SECONDS);
+                throw new RuntimeException("upload task failed");
+            }
+            ExcelHandlerExecutors.execute(() -> executeShardedUpload(stagedFile, taskKey, taskParam));
+            return taskKey;
+        }
+        if (!ExcelHandlerExecutors.isDurable()) {
+            // 执行上传操作
+            ExcelHandlerExecutors.execute(() -> executeUpload(file::getInputStream, taskKey, taskParam));
+            return taskKey;
+        }
+
+        String resourceKey;
+        try (InputStream in = file.getInputStream()) {
+            resourceKey = transactionStation.pushResourceToStation(new StationResource(in, file.getOriginalFilename(), taskParam.getLanguage()));
+        } catch (Exception e) {
+            log.error("AbstractHandler push upload to station error taskKey:{}", taskKey, e);
+            taskStatusStore.update(taskKey, TaskResultVo.failedResult(), RESULT_EXPIRE_SECONDS);
+            throw new RuntimeException("upload task failed");
+        }
+        TaskRecord record = TaskRecord.of(taskKey, TaskRecord.TaskType.UPLOAD, handlerName(), taskParam);
+        record.setResourceKey(resourceKey);
+        ExcelHandlerExecutors.execute(record, () -> executeStationUpload(resourceKey, taskKey, taskParam));
         return taskKey;
     }
 
+    /**
+     * 从中转站读取资源执行导入任务, 正常结束后按需释放中转站资源
+     * <p>异常退出的任务会被重新认领, 此时保留资源
+     *
+     * @param resourceKey 资源在中转站中的Key
+     * @param taskKey     任务Key
+     * @param taskParam   任务参数对象
+     */
+    private void executeStationUpload(String resourceKey, String taskKey, TaskParam taskParam) {
+        if (!isShardedUpload()) {
+            executeUpload(() -> transactionStation.pullResourceFromStation(resourceKey), taskKey, taskParam);
+        } else {
+            Path stagedFile = null;
+            try {
+                stagedFile = spoolUpload(() -> transactionStation.pullResourceFromStation(resourceKey), FilenameUtils.getName(resourceKey));
+            } catch (Exception e) {
+                log.error("AbstractHandler spool upload error taskKey:{}", taskKey, e);
+                taskStatusStore.update(taskKey, TaskResultVo.failedResult(), RESULT_EXPIRE_SECONDS);
+            }
+            if (null != stagedFile) {
+                executeShardedUpload(stagedFile, taskKey, taskParam);
+            }
+        }
+        if (clearStationResource()) {
+            try {
+                transactionStation.deleteResource(resourceKey);
+            } catch (Exception e) {
+                log.error("Clear TransactionStation Failed taskKey:{}", taskKey, e);
+            }
+        }
+    }
+
     /**
      * 异步执行导入任务
      *
-     * @param file      资源K
+     * @param resource  资源数据
      * @param taskKey   任务Key
      * @param taskParam 任务参数对象
      */
     @SuppressWarnings("unchecked")
-    private void executeUpload(MultipartFile file, String taskKey, TaskParam taskParam) {
+    private void executeUpload(Callable<InputStream> resource, String taskKey, TaskParam taskParam) {
 
         TaskResultVo result = null;
         InputStream resourceStream = null;
         try {
             MartContextManager.setByCode(taskParam.getMart());
-            resourceStream = file.getInputStream();
+            resourceStream = resource.call();
             result = handleUploadData(resourceStream, taskParam);
             log.info("Excel HandlerUpload executeUpload taskKey:{}, result:{}", taskKey, JSON.toJSONString(result));
         } catch (Exception e) {
@@ -93,7 +209,7 @@ public abstract class AbstractHandler {
             result = TaskResultVo.failedResult();
         } finally {
             // 更新任务状态
-            setRedis(taskKey, result, RESULT_EXPIRE_SECONDS);
+            taskStatusStore.update(taskKey, result, RESULT_EXPIRE_SECONDS);
             // 关闭资源
             try {
                 if (null != resourceStream) {
@@ -105,6 +221,114 @@ public abstract class AbstractHandler {
         }
     }
 
+    /**
+     * 上传文件转存到暂存目录
+     *
+     * @param resource 资源数据
+     * @param fileName 原始文件名
+     * @return 暂存文件
+     * @throws Exception 转存失败
+     */
+    private Path spoolUpload(Callable<InputStream> resource, String fileName) throws Exception {
+        String baseName = FilenameUtils.getBaseName(fileName);
+        String originExtension = FilenameUtils.getExtension(fileName);
+        String extension = StringUtils.isBlank(originExtension) ? ".tmp" : String.format(".%s", originExtension);
+        Path tempDir = Files.createDirectories(Paths.get(stagingTempDir()));
+        Path stagedFile = Files.createTempFile(tempDir, baseName + "-", extension);
+        try (InputStream in = resource.call()) {
+            Files.copy(in, stagedFile, StandardCopyOption.REPLACE_EXISTING);
+        } catch (Exception e) {
+            Files.deleteIfExists(stagedFile);
+            throw e;
+        }
+        return stagedFile;
+    }
+
+    /**
+     * 异步执行分片导入任务
+     *
+     * <p>暂存文件内存映射后经{@link AbstractShardedHandler#splitUpload}切分, 各分片并行交由{@link AbstractShardedHandler#handleUploadShard}处理,
+     * 任一分片未完成时以该分片结果为准, 全部完成时经{@link AbstractShardedHandler#mergeUploadResults}合并
+     *
+     * @param stagedFile 暂存文件
+     * @param taskKey    任务Key
+     * @param taskParam  任务参数对象
+     */
+    private void executeShardedUpload(Path stagedFile, String taskKey, TaskParam taskParam) {
+        AbstractShardedHandler sharded = (AbstractShardedHandler) this;
+        TaskResultVo result = null;
+        List<Future<TaskResultVo>> futures = new ArrayList<>();
+        AtomicBoolean aborted = new AtomicBoolean();
+        try (FileChannel channel = FileChannel.open(stagedFile, StandardOpenOption.READ)) {
+            MartContextManager.setByCode(taskParam.getMart());
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalStateException("upload file too large:" + channel.size());
+            }
+            MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            List<UploadShard> shards = sharded.splitUpload(data, taskParam);
+
+            // 首个分片由当前线程处理, 其余提交子任务
+            for (int i = 1; i < shards.size(); i++) {
+                UploadShard shard = shards.get(i);
+                futures.add(ExcelHandlerExecutors.submitSubTask(() -> {
+                    if (aborted.get()) {
+                        return null;
+                    }
+                    MartContextManager.setByCode(taskParam.getMart());
+                    return sharded.handleUploadShard(shard, taskParam);
+                }));
+            }
+            List<TaskResultVo> results = new ArrayList<>(shards.size());
+            results.add(sharded.handleUploadShard(shards.get(0), taskParam));
+            for (Future<TaskResultVo> future : futures) {
+                results.add(future.get());
+            }
+            result = mergeShardResults(sharded, results, taskParam);
+            log.info("Excel HandlerUpload executeShardedUpload taskKey:{}, shards:{}, result:{}", taskKey, shards.size(), JSON.toJSONString(result));
+        } catch (Exception e) {
+            log.info("ExcelAbstractHandler executeShardedUpload error: taskKey:{}", taskKey, e);
+            result = TaskResultVo.failedResult();
+        } finally {
+            // 未开始的分片不再处理, 执行中的分片等待结束后再写入最终状态, 避免失败状态写入后仍有数据落库
+            aborted.set(true);
+            for (Future<TaskResultVo> future : futures) {
+                try {
+                    Uninterruptibles.getUninterruptibly(future);
+                } catch (ExecutionException | CancellationException e) {
+                    // 分片异常已体现在结果中
+                }
+            }
+            // 更新任务状态
+            taskStatusStore.update(taskKey, result, RESULT_EXPIRE_SECONDS);
+            // 删除暂存文件
+            try {
+                Files.deleteIfExists(stagedFile);
+            } catch (Exception e) {
+                log.error("delete upload stagedFile error taskKey:{}", taskKey, e);
+                stagedFile.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * 合并分片结果: 存在未完成的分片时返回该分片结果, 全部完成时交由子类合并
+     */
+    private static TaskResultVo mergeShardResults(AbstractShardedHandler sharded, List<TaskResultVo> results, TaskParam taskParam) {
+        for (TaskResultVo result : results) {
+            if (null == result || TaskResultVo.TaskStatus.DONE.getVal() != result.getStatus()) {
+                return null == result ? TaskResultVo.failedResult() : result;
+            }
+        }
+        return results.size() == 1 ? results.get(0) : sharded.mergeUploadResults(results, taskParam);
+    }
+
+    /**
+     * 是否分片导入, 见{@link AbstractShardedHandler}
+     */
+    private boolean isShardedUpload() {
+        return this instanceof AbstractShardedHandler;
+    }
+
     /**
      * 导出文件
      *
@@ -126,8 +350,46 @@ public abstract class AbstractHandler {
                 .language(language)
                 .userBaseInfo(userBaseInfo)
                 .query(query).build();
+        return submitDownload(fileName, taskParam);
+    }
+
+    /**
+     * 导出文件, 使用调用方提供的任务参数
+     * <p>以{@code query}替换查询条件后提交副本, 不修改调用方的{@code taskParam}
+     *
+     * @param query     查询条件
+     * @param fileName  导出文件名
+     * @param taskParam 任务参数对象
+     * @return 任务Key
+     */
+    public String download(CxBaseQuery query, String fileName, TaskParam taskParam) {
+        assert taskParam != null;
+
+        TaskParam copy = TaskParam.builder()
+                .mart(taskParam.getMart())
+                .language(taskParam.getLanguage())
+                .userBaseInfo(taskParam.getUserBaseInfo())
+                .entrance(taskParam.getEntrance())
+                .query(query).build();
+        return submitDownload(fileName, copy);
+    }
+
+    /**
+     * 提交导出任务
+     *
+     * @param fileName  导出文件名
+     * @param taskParam 任务参数对象
+     * @return 任务Key
+     */
+    private String submitDownload(String fileName, TaskParam taskParam) {
         String taskKey = buildTaskKey();
-        ExcelHandlerExecutors.execute(() -> executeDownload(taskKey, fileName, taskParam));
+        if (!ExcelHandlerExecutors.isDurable()) {
+            ExcelHandlerExecutors.execute(() -> executeDownload(taskKey, fileName, taskParam));
+            return taskKey;
+        }
+        TaskRecord record = TaskRecord.of(taskKey, TaskRecord.TaskType.DOWNLOAD, handlerName(), taskParam);
+        record.setFileName(fileName);
+        ExcelHandlerExecutors.execute(record, () -> executeDownload(taskKey, fileName, taskParam));
         return taskKey;
     }
 
@@ -141,29 +403,45 @@ public abstract class AbstractHandler {
     @SuppressWarnings("unchecked")
     private void executeDownload(String taskKey, String fileName, TaskParam taskParam) {
         TaskResultVo result = null;
-        File tempFile = null;
-        OutputStream out = null;
+        StagingBuffer buffer = null;
         InputStream in = null;
+        Future<Integer> countFuture = null;
+        boolean released = false;
+        int thresholdCnt = 0;
 
         try {
             // 设置上下文
             setContextThread(taskParam);
 
             // 是否控制导出数量
-            int thresholdCnt = countThreshold();
-            if (supportCountLimit() && count(taskParam.getQuery()) > thresholdCnt) {
-                result = TaskResultVo.failedResult(CxI18nUtil.translate("excel.abstractHandler.export.count.limit", thresholdCnt));
-                return;
+            if (supportCountLimit()) {
+                thresholdCnt = countThreshold();
+                // 多统计一条即可判断是否超限, 阈值为Integer.MAX_VALUE(不限制)时避免溢出
+                final int countLimit = thresholdCnt < Integer.MAX_VALUE ? thresholdCnt + 1 : thresholdCnt;
+                if (CountLimitMode.CONCURRENT == countLimitMode()) {
+                    countFuture = ExcelHandlerExecutors.submitSubTask(() -> {
+                        setContextThread(taskParam);
+                        return count(taskParam.getQuery(), countLimit);
+                    });
+                } else if (count(taskParam.getQuery(), countLimit) > thresholdCnt) {
+                    result = countLimitResult(thresholdCnt);
+                    return;
+                }
             }
 
-            // 获取数据 写入临时文件
-            tempFile = createTempFileWithDateTimeSuffix(fileName);
-            out = new FileOutputStream(tempFile);
-            handleDownloadData(out, taskParam);
+            // 获取数据 写入暂存区(超出内存上限时转存临时文件)
+            buffer = new StagingBuffer(stagingMemoryThreshold(), Paths.get(stagingTempDir()), fileName);
+            handleDownloadData(null == countFuture ? buffer : new CountLimitOutputStream(buffer, countFuture, thresholdCnt), taskParam);
+            buffer.close();
+            // 导出完成后确认统计结果, 最多等待至任务过期
+            if (null != countFuture && countFuture.get(TASK_EXPIRE_SECONDS, TimeUnit.SECONDS) > thresholdCnt) {
+                result = countLimitResult(thresholdCnt);
+                return;
+            }
 
             // 待导出文件推送到Station
-            in = new FileInputStream(tempFile);
-            String stationPath = transactionStation.pushResourceToStation(new StationResource(in, tempFile.getName(), taskParam.getLanguage()));
+            in = buffer.openInputStream();
+            String stationPath = transactionStation.pushResourceToStation(new StationResource(in, buildResourceNameWithDateTimeSuffix(fileName), taskParam.getLanguage()));
             // 包装成最终客户端能直接访问Url
             String downloadUrl = transactionStation.wrapperAccessUrl(stationPath);
 
@@ -171,37 +449,64 @@ public abstract class AbstractHandler {
             log.info("AbstractHandler executeDownload stationPath:{}, downloadUrl:{}", stationPath, downloadUrl);
 
         } catch (Exception e) {
-            log.error("AbstractHandler executeDownload error", e);
-            result = TaskResultVo.failedResult();
+            if (ExcelHandlerExecutors.releaseOnForcedShutdown()) {
+                // 导出可安全重做, 关闭超时被中断时不写入失败状态, 释放租约由其他节点重新执行
+                log.warn("AbstractHandler executeDownload interrupted by shutdown, released taskKey:{}", taskKey);
+                released = true;
+            } else if (isCountLimitExceeded(countFuture, thresholdCnt)) {
+                log.info("AbstractHandler executeDownload aborted, count exceeds threshold:{}", thresholdCnt);
+                result = countLimitResult(thresholdCnt);
+            } else {
+                log.error("AbstractHandler executeDownload error", e);
+                result = TaskResultVo.failedResult();
+            }
         } finally {
+            if (null != countFuture && !countFuture.isDone()) {
+                countFuture.cancel(true);
+            }
             if (log.isInfoEnabled()) {
                 log.info("AbstractHandler executeDownload file:{}, Result:{}", fileName, JSON.toJSONString(result));
             }
-            // 删除临时文件
-            if (null != tempFile && tempFile.exists()) {
-                if (log.isDebugEnabled()) {
-                    log.debug("delete download tempFile:[path:{}, name:{}]", tempFile.getAbsolutePath(), tempFile.getName());
-                }
-                if (!tempFile.delete()) {
-                    tempFile.deleteOnExit();
-                }
-            }
-            // 关闭输入输出流
+            // 关闭输入流
             try {
-                if (null != out) {
-                    out.close();
-                }
                 if (null != in) {
                     in.close();
                 }
             } catch (Exception e) {
                 log.error("close InPut/OutPut Stream error", e);
             }
+            // 释放暂存区
+            if (null != buffer) {
+                if (log.isDebugEnabled()) {
+                    log.debug("release download staging buffer:[name:{}, size:{}, spilled:{}]", fileName, buffer.size(), buffer.isSpilled());
+                }
+                buffer.release();
+            }
             if (null == result) {
                 result = TaskResultVo.failedResult();
             }
             //更新任务状态
-            setRedis(taskKey, result, RESULT_EXPIRE_SECONDS);
+            if (!released) {
+                taskStatusStore.update(taskKey, result, RESULT_EXPIRE_SECONDS);
+            }
+        }
+    }
+
+    private TaskResultVo countLimitResult(int thresholdCnt) {
+        return TaskResultVo.failedResult(CxI18nUtil.translate("excel.abstractHandler.export.count.limit", thresholdCnt));
+    }
+
+    /**
+     * 并行统计是否已确认超出导出上限
+     */
+    private static boolean isCountLimitExceeded(Future<Integer> countFuture, int thresholdCnt) {
+        if (null == countFuture || !countFuture.isDone() || countFuture.isCancelled()) {
+            return false;
+        }
+        try {
+            return countFuture.get() > thresholdCnt;
+        } catch (Exception e) {
+            return false;
         }
     }
 
@@ -229,12 +534,18 @@ public abstract class AbstractHandler {
         return File.createTempFile(baseName, extension);
     }
 
-    private File createTempFileWithDateTimeSuffix(String originFileName) throws IOException {
+    /**
+     * 构造推送到中转站的资源名
+     *
+     * @param originFileName 原始文件名
+     * @return 带时间后缀的资源名
+     */
+    private String buildResourceNameWithDateTimeSuffix(String originFileName) {
         String baseName = FilenameUtils.getBaseName(originFileName);
         String originExtension = FilenameUtils.getExtension(originFileName);
         String extension = StringUtils.isBlank(originExtension) ? ".tmp" : String.format(".%s", originExtension);
         String dateTimeStr = DateUtil.formatDateTimeStr(new Date());
-        return new File(baseName+"-"+ dateTimeStr+extension);
+        return baseName+"-"+ dateTimeStr+extension;
     }
 
     /**
@@ -244,7 +555,7 @@ public abstract class AbstractHandler {
      */
     private String buildTaskKey() {
         String taskKey = String.format(TASK_STATUS_FMT, UUID.randomUUID());
-        boolean prepareRes = setRedis(taskKey, TaskResultVo.runningResult(), TASK_EXPIRE_SECONDS);
+        boolean prepareRes = taskStatusStore.create(taskKey, TaskResultVo.runningResult(), TASK_EXPIRE_SECONDS);
 
         if (!prepareRes) {
             throw new RuntimeException("upload task failed");
@@ -254,6 +565,69 @@ public abstract class AbstractHandler {
     }
 
 
+    private String handlerName() {
+        return ClassUtils.getUserClass(getClass()).getName();
+    }
+
+    /**
+     * 将持久化任务记录还原为可执行任务
+     *
+     * <p>配合{@link ExcelHandlerExecutors#enableDurableQueue}使用, 如:
+     * {@code ExcelHandlerExecutors.enableDurableQueue(new LocalDurableTaskQueue(dir), AbstractHandler::resolveRecoveredTask)}
+     *
+     * <p>任务状态已过期或已结束(客户端已看到最终状态, 可能已重新提交)时不再执行, 仅清理中转站资源后移除任务记录
+     *
+     * @param record 任务记录
+     * @return 可执行任务, 本节点没有对应Handler时返回{@code null}
+     */
+    public static Runnable resolveRecoveredTask(TaskRecord record) {
+        AbstractHandler handler = HANDLERS.get(record.getHandlerName());
+        if (null == handler) {
+            return null;
+        }
+        String taskKey = record.getTaskKey();
+        if (!handler.isTaskRunning(record)) {
+            log.info("AbstractHandler recovered task no longer running, discard taskKey:{}", taskKey);
+            return () -> handler.discardRecoveredTask(record);
+        }
+        TaskParam taskParam;
+        try {
+            taskParam = record.toTaskParam();
+        } catch (Exception e) {
+            log.error("AbstractHandler restore taskParam error taskKey:{}", taskKey, e);
+            return () -> handler.taskStatusStore.update(taskKey, TaskResultVo.failedResult(), RESULT_EXPIRE_SECONDS);
+        }
+        if (TaskRecord.TaskType.UPLOAD == record.getType()) {
+            return () -> handler.executeStationUpload(record.getResourceKey(), taskKey, taskParam);
+        }
+        return () -> handler.executeDownload(taskKey, record.getFileName(), taskParam);
+    }
+
+    /**
+     * 任务在有效期内且状态仍为RUNNING
+     */
+    private boolean isTaskRunning(TaskRecord record) {
+        if (System.currentTimeMillis() - record.getSubmitTime() >= TimeUnit.SECONDS.toMillis(TASK_EXPIRE_SECONDS)) {
+            return false;
+        }
+        TaskResultVo status = taskStatusStore.get(record.getTaskKey());
+        return null != status && TaskResultVo.TaskStatus.RUNNING.getVal() == status.getStatus();
+    }
+
+    /**
+     * 丢弃不再执行的任务, 释放导入文件在中转站中的资源
+     */
+    private void discardRecoveredTask(TaskRecord record) {
+        if (null == record.getResourceKey() || !clearStationResource()) {
+            return;
+        }
+        try {
+            transactionStation.deleteResource(record.getResourceKey());
+        } catch (Exception e) {
+            log.error("Clear TransactionStation Failed taskKey:{}", record.getTaskKey(), e);
+        }
+    }
+
     /**
      * 任务结束后是否需要释放中转站资源
      *
@@ -265,6 +639,7 @@ public abstract class AbstractHandler {
 
     /**
      * 处理上传数据
+     * <p>启用持久化任务队列时, 节点宕机前未结束的导入会被其他节点从头重新执行, 实现须保证重复导入幂等(如按业务主键覆盖写入)
      *
      * @param inputStream 资源流
      * @param taskParam   任务参数对象
@@ -291,15 +666,31 @@ public abstract class AbstractHandler {
      */
     public TaskResultVo checkTaskStatus(String taskKey) {
         try {
-            String taskJson = this.cxRedisTemplate.get(taskKey);
-            return StringUtils.isBlank(taskJson) ? TaskResultVo.expiredResult() : JSON.parseObject(taskJson, TaskResultVo.class);
+            TaskResultVo result = taskStatusStore.get(taskKey);
+            return null == result ? TaskResultVo.expiredResult() : result;
         } catch (Exception e) {
             return TaskResultVo.failedResult();
         }
     }
 
-    private boolean setRedis(String key, TaskResultVo taskResultVo, long timeOutSec) {
-        return this.cxRedisTemplate.set(key, JSON.toJSONString(taskResultVo), timeOutSec);
+    /**
+     * 导出暂存内存上限(字节), 超出后转存到{@link #stagingTempDir()}下的临时文件<p>
+     * 子類自行覆蓋
+     *
+     * @return
+     */
+    protected long stagingMemoryThreshold() {
+        return STAGING_MEMORY_DEFAULT;
+    }
+
+    /**
+     * 导出暂存临时文件目录, 默认为{@code java.io.tmpdir}<p>
+     * 子類自行覆蓋
+     *
+     * @return
+     */
+    protected String stagingTempDir() {
+        return System.getProperty("java.io.tmpdir");
     }
 
     /**
@@ -322,6 +713,16 @@ public abstract class AbstractHandler {
         return COUNT_PER_DEFAULT;
     }
 
+    /**
+     * 导出数量统计方式( {@code #supportCountLimit()}为 <i>true</>时 生效)<p>
+     * 子類自行覆蓋
+     *
+     * @return
+     */
+    protected CountLimitMode countLimitMode() {
+        return CountLimitMode.COUNT_FIRST;
+    }
+
     /**
      * 導出數量<p>
      * 子類自行覆蓋
@@ -331,4 +732,67 @@ public abstract class AbstractHandler {
     protected int count(CxBaseQuery query) {
         return 0;
     }
+
+    /**
+     * 導出數量, 只需统计到{@code limit}条即可返回(如 {@code SELECT COUNT(*) FROM (... LIMIT limit)})<p>
+     * 默认调用{@link #count(CxBaseQuery)}全量统计, 子類自行覆蓋
+     *
+     * @param query 查询条件
+     * @param limit 统计上限, 为{@code countThreshold() + 1}
+     * @return
+     */
+    protected int count(CxBaseQuery query, int limit) {
+        return count(query);
+    }
+
+    /**
+     * 导出数量统计方式
+     */
+    public enum CountLimitMode {
+        /**
+         * 先统计数量, 未超限再导出
+         */
+        COUNT_FIRST,
+        /**
+         * 统计与导出并行, 统计超限时中止导出
+         */
+        CONCURRENT
+    }
+
+    /**
+     * 并行统计超限后, 导出数据写入时抛出异常中止导出
+     */
+    private static class CountLimitOutputStream extends FilterOutputStream {
+        private final Future<Integer> countFuture;
+        private final int thresholdCnt;
+        private boolean checked;
+
+        private CountLimitOutputStream(OutputStream out, Future<Integer> countFuture, int thresholdCnt) {
+            super(out);
+            this.countFuture = countFuture;
+            this.thresholdCnt = thresholdCnt;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            checkLimit();
+            out.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            checkLimit();
+            out.write(b, off, len);
+        }
+
+        private void checkLimit() throws IOException {
+            if (checked || !countFuture.isDone()) {
+                return;
+            }
+            checked = true;
+            if (isCountLimitExceeded(countFuture, thresholdCnt)) {
+                throw new IOException("export count exceeds threshold:" + thresholdCnt);
+            }
+        }
+    }
 }
@@ -0,0 +1,59 @@
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.util.List;
+
+/**
+ * @Description 分片导入抽象类
+ * <pre>
+ * 上传文件先转存到本地暂存文件并内存映射, 经{@link #splitUpload}切分后各分片并行处理,
+ * 全部完成后由{@link #mergeUploadResults}合并为最终结果。
+ * 切分与合并是成对的, 因此均为必须实现的方法; 不需要分片导入的Handler直接继承{@link AbstractHandler}。
+ * </pre>
+ * @Date 2022/4/25
+ * @author mingzhe.xiang
+ */
+public abstract class AbstractShardedHandler extends AbstractHandler {
+
+    public AbstractShardedHandler(TransactionStation transactionStation) {
+        super(transactionStation);
+    }
+
+    public AbstractShardedHandler(TransactionStation transactionStation, TaskStatusStore taskStatusStore) {
+        super(transactionStation, taskStatusStore);
+    }
+
+    /**
+     * 切分导入文件<p>
+     * 文本类文件可使用{@link UploadShard#splitByLines}按行切分; 无法切分的格式(如xlsx)返回{@link UploadShard#whole}
+     *
+     * @param data      暂存文件数据(只读内存映射)
+     * @param taskParam 任务参数对象
+     * @return 分片列表, 至少包含一个分片
+     */
+    protected abstract List<UploadShard> splitUpload(MappedByteBuffer data, TaskParam taskParam);
+
+    /**
+     * 处理单个分片, 各分片在不同线程并行执行<p>
+     * 默认将分片作为完整文件交由{@link #handleUploadData}处理, 子類自行覆蓋
+     *
+     * @param shard     分片
+     * @param taskParam 任务参数对象
+     * @return 分片处理结果
+     * @throws Exception 处理失败抛出异常
+     */
+    protected TaskResultVo handleUploadShard(UploadShard shard, TaskParam taskParam) throws Exception {
+        try (InputStream in = shard.openStream()) {
+            return handleUploadData(in, taskParam);
+        }
+    }
+
+    /**
+     * 合并各分片处理结果<p>
+     * 仅在多个分片均为完成状态时调用; 存在未完成的分片时直接以该分片结果作为最终结果
+     *
+     * @param results   按分片序号排列的处理结果
+     * @param taskParam 任务参数对象
+     * @return 最终结果
+     */
+    protected abstract TaskResultVo mergeUploadResults(List<TaskResultVo> results, TaskParam taskParam);
+}
@@ -0,0 +1,56 @@
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * @Description 顺序读取多个{@link ByteBuffer}的输入流
+ * <p>读取范围为各Buffer的{@code position}至{@code limit}, 读取会移动传入Buffer的{@code position}
+ * @Date 2022/4/6
+ * @author mingzhe.xiang
+ */
+class ByteBufferInputStream extends InputStream {
+
+    private final List<ByteBuffer> buffers;
+    private int index;
+
+    ByteBufferInputStream(List<ByteBuffer> buffers) {
+        this.buffers = buffers;
+    }
+
+    @Override
+    public int read() {
+        ByteBuffer buffer = current();
+        return null == buffer ? -1 : buffer.get() & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (len == 0) {
+            return 0;
+        }
+        ByteBuffer buffer = current();
+        if (null == buffer) {
+            return -1;
+        }
+        int n = Math.min(len, buffer.remaining());
+        buffer.get(b, off, n);
+        return n;
+    }
+
+    @Override
+    public int available() {
+        ByteBuffer buffer = current();
+        return null == buffer ? 0 : buffer.remaining();
+    }
+
+    private ByteBuffer current() {
+        while (index < buffers.size()) {
+            ByteBuffer buffer = buffers.get(index);
+            if (buffer.hasRemaining()) {
+                return buffer;
+            }
+            index++;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.List;
+
+/**
+ * @Description 持久化任务队列
+ * <pre>
+ * 提交的任务先持久化并由当前节点持有租约, 任务结束后移除。
+ * 节点宕机或重启时未完成任务的租约不再续期, 过期后由任意节点(包括重启后的自身)认领重新执行,
+ * 同一时刻只有一个节点持有某任务的租约。
+ * 宕机前已部分执行的任务会被完整地重新执行, 因此任务(尤其是导入)须保证重复执行幂等。
+ * </pre>
+ * @Date 2022/3/21
+ * @author mingzhe.xiang
+ */
+public interface DurableTaskQueue {
+
+	/**
+	 * 持久化任务, 当前节点持有租约
+	 * @param record 任务记录
+	 * @throws Exception 持久化失败
+	 */
+	void offer(TaskRecord record) throws Exception;
+
+	/**
+	 * 任务结束, 移除任务及租约
+	 * @param taskKey 任务Key
+	 */
+	void complete(String taskKey);
+
+	/**
+	 * 放弃租约, 任务保留等待重新认领
+	 * @param taskKey 任务Key
+	 */
+	void release(String taskKey);
+
+	/**
+	 * 为当前节点持有的所有任务续租
+	 */
+	void renewLeases();
+
+	/**
+	 * 认领租约已过期或无人持有的任务
+	 * @param maxTasks 最多认领数量
+	 * @return 认领成功的任务
+	 */
+	List<TaskRecord> claimExpired(int maxTasks);
+
+	/**
+	 * 租约时长(毫秒)
+	 */
+	long leaseMillis();
+}
@@ -1,7 +1,9 @@
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.function.Function;
 
 
 @Slf4j
@@ -22,16 +24,37 @@ public class ExcelHandlerExecutors {
      */
     private static final ThreadFactory FACTORY = new ThreadFactoryBuilder().setNameFormat(THREAD_POOL_NAME).build();
 
+    /**
+     * 子任务线程工厂
+     */
+    private static final ThreadFactory SUB_TASK_FACTORY = new ThreadFactoryBuilder().setNameFormat("ExcelSubTaskPool-%d").build();
+
+    /**
+     * 子任务队列大小
+     */
+    private static final int SUB_TASK_QUEUE_SIZE = 1000;
+
     /**
      * 空闲线程存活时间
      */
     private static final long KEEP_ALIVE = 60L;
 
+    /**
+     * 默认关闭时等待执行中任务完成的时间(秒)
+     */
+    private static final long DEFAULT_DRAIN_SECONDS = 30L;
+
     /**
      * Executor
      */
     private static ExecutorService executor;
 
+    /**
+     * 子任务Executor (导出数量统计、分片导入等)
+     * <p>与主线程池隔离, 避免主任务等待子任务时占满线程互相阻塞; 队列满时由提交线程自行执行, 关闭后拒绝提交<p/>
+     */
+    private static ExecutorService subTaskExecutor;
+
     /**
      * 执行队列
      * <p>考虑实际导入导出场景 300已经足够<p/>
@@ -39,13 +62,57 @@ public class ExcelHandlerExecutors {
     private static BlockingQueue<Runnable> executeQueue = new ArrayBlockingQueue<>(300);
 
     /**
-     * 拒绝策略：DiscardOldestPolicy
+     * 拒绝策略：DiscardOldestPolicy, 被丢弃的持久化任务释放租约等待重新认领
+     */
+    private static RejectedExecutionHandler rejectedHandler = (task, pool) -> {
+        if (pool.isShutdown()) {
+            releaseIfDurable(task);
+            return;
+        }
+        releaseIfDurable(pool.getQueue().poll());
+        pool.execute(task);
+    };
+
+    /**
+     * 子任务拒绝策略: 运行中由提交线程自行执行, 关闭后直接拒绝, 避免提交方等待一个永远不会执行的任务
+     */
+    private static RejectedExecutionHandler subTaskRejectedHandler = (task, pool) -> {
+        if (pool.isShutdown()) {
+            throw new RejectedExecutionException("ExcelSubTaskPool is shutdown");
+        }
+        task.run();
+    };
+
+    /**
+     * 持久化任务队列, 未启用时任务仅存在于内存队列
+     */
+    private static volatile DurableTaskQueue durableQueue;
+
+    /**
+     * 租约续期及过期任务认领线程
+     */
+    private static ScheduledExecutorService leaseKeeper;
+
+    /**
+     * 过期任务认领调度, 关闭时最先停止
+     */
+    private static ScheduledFuture<?> recoverSchedule;
+
+    /**
+     * 关闭超时, 正在中断执行中的任务
+     */
+    private static volatile boolean forcedShutdown = false;
+
+    /**
+     * 当前线程正在执行的持久化任务
      */
-    private static RejectedExecutionHandler rejectedHandler = new ThreadPoolExecutor.DiscardOldestPolicy();
+    private static final ThreadLocal<DurableTask> CURRENT_DURABLE_TASK = new ThreadLocal<>();
 
     static {
         try {
             executor = new ThreadPoolExecutor(CORE_SIZE, CORE_SIZE * 4, KEEP_ALIVE, TimeUnit.SECONDS, executeQueue, FACTORY, rejectedHandler);
+            subTaskExecutor = new ThreadPoolExecutor(CORE_SIZE, CORE_SIZE, KEEP_ALIVE, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(SUB_TASK_QUEUE_SIZE), SUB_TASK_FACTORY, subTaskRejectedHandler);
         } catch (Exception e) {
             log.error("ExcelHandlerPool init error", e);
             throw new ExceptionInInitializerError(e);
@@ -55,15 +122,115 @@ public class ExcelHandlerExecutors {
     private ExcelHandlerExecutors() {}
 
     /**
-     * 关闭线程池
+     * 启用持久化任务队列
+     * <p>立即认领租约已过期的任务(包括本节点上次未完成的任务), 之后定期续租并认领其他节点遗留的任务
+     *
+     * @param queue    持久化任务队列
+     * @param resolver 将任务记录还原为可执行任务, 无法处理时返回{@code null}
+     */
+    public static synchronized void enableDurableQueue(DurableTaskQueue queue, Function<TaskRecord, Runnable> resolver) {
+        if (null != durableQueue) {
+            throw new IllegalStateException("DurableTaskQueue already enabled");
+        }
+        durableQueue = queue;
+        long renewInterval = Math.max(queue.leaseMillis() / 3, 1L);
+        leaseKeeper = Executors.newSingleThreadScheduledExecutor(
+                new ThreadFactoryBuilder().setNameFormat("ExcelLeaseKeeper-%d").setDaemon(true).build());
+        leaseKeeper.scheduleWithFixedDelay(queue::renewLeases, renewInterval, renewInterval, TimeUnit.MILLISECONDS);
+        recoverSchedule = leaseKeeper.scheduleWithFixedDelay(() -> recover(queue, resolver), 0, Math.max(queue.leaseMillis() / 2, 1L), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 认领并执行过期任务, 认领数量不超过执行队列剩余容量
+     */
+    private static void recover(DurableTaskQueue queue, Function<TaskRecord, Runnable> resolver) {
+        try {
+            if (executor.isShutdown()) {
+                return;
+            }
+            List<TaskRecord> records = queue.claimExpired(executeQueue.remainingCapacity());
+            for (TaskRecord record : records) {
+                Runnable task;
+                try {
+                    task = resolver.apply(record);
+                } catch (Exception e) {
+                    log.error("ExcelTask recover resolve error taskKey:{}", record.getTaskKey(), e);
+                    queue.release(record.getTaskKey());
+                    continue;
+                }
+                if (null == task) {
+                    log.warn("ExcelTask recover skipped, no handler taskKey:{}, handler:{}", record.getTaskKey(), record.getHandlerName());
+                    queue.release(record.getTaskKey());
+                    continue;
+                }
+                log.info("ExcelTask recovered taskKey:{}, type:{}", record.getTaskKey(), record.getType());
+                executor.execute(new DurableTask(record.getTaskKey(), task));
+            }
+        } catch (Exception e) {
+            log.error("ExcelTask recover error", e);
+        }
+    }
+
+    /**
+     * 关闭线程池, 等待执行中任务完成
      */
     public static void shutdown() {
+        shutdown(DEFAULT_DRAIN_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 关闭线程池
+     * <p>不再接收新任务, 等待已提交任务在{@code timeout}内完成。超时后中断执行中的任务,
+     * 尚未开始的持久化任务释放租约, 由其他节点或本节点重启后认领执行;
+     * 执行中被中断的导入由任务自身记录失败状态后结束, 不再重新执行, 导出则释放租约重新执行(见{@link #releaseOnForcedShutdown()})。
+     * 等待期间持续续租, 避免执行中的任务被其他节点认领
+     *
+     * @param timeout 等待时长
+     * @param unit    时间单位
+     * @return 是否在等待时长内全部完成
+     */
+    public static boolean shutdown(long timeout, TimeUnit unit) {
+        if (null != recoverSchedule) {
+            recoverSchedule.cancel(false);
+        }
         try {
             executor.shutdown();
-            log.info("ExcelHandlerExecutors shutdown success");
+            if (executor.awaitTermination(timeout, unit)) {
+                subTaskExecutor.shutdown();
+                stopLeaseKeeper();
+                log.info("ExcelHandlerExecutors shutdown success");
+                return true;
+            }
+            log.warn("ExcelHandlerExecutors drain timeout. Starting shutdowNow...");
+        } catch (InterruptedException e) {
+            log.warn("ExcelHandlerExecutors shutdown interrupted. Starting shutdowNow...");
+            Thread.currentThread().interrupt();
         } catch (Exception e) {
             log.warn("ExcelHandlerExecutors shutdown failed. Starting shutdowNow...");
-            executor.shutdownNow();
+        }
+        forcedShutdown = true;
+        for (Runnable task : executor.shutdownNow()) {
+            releaseIfDurable(task);
+        }
+        // 取消未开始的子任务, 唤醒等待其结果的任务
+        for (Runnable task : subTaskExecutor.shutdownNow()) {
+            if (task instanceof Future) {
+                ((Future<?>) task).cancel(false);
+            }
+        }
+        // 被中断的任务结束(移除记录或释放租约)后再停止续租
+        try {
+            executor.awaitTermination(DEFAULT_DRAIN_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        stopLeaseKeeper();
+        return false;
+    }
+
+    private static void stopLeaseKeeper() {
+        if (null != leaseKeeper) {
+            leaseKeeper.shutdown();
         }
     }
 
@@ -80,6 +247,56 @@ public class ExcelHandlerExecutors {
         }
     }
 
+    /**
+     * 执行持久化任务, 未启用持久化队列时等同于{@link #execute(Runnable)}
+     *
+     * @param record 任务记录
+     * @param task   任务
+     */
+    public static void execute(TaskRecord record, Runnable task) {
+        DurableTaskQueue queue = durableQueue;
+        if (null == queue) {
+            execute(task);
+            return;
+        }
+        try {
+            queue.offer(record);
+        } catch (Exception e) {
+            log.error("ExcelTask persist failed taskKey:{}", record.getTaskKey(), e);
+            execute(task);
+            return;
+        }
+        execute(new DurableTask(record.getTaskKey(), task));
+    }
+
+    /**
+     * 关闭超时中断任务时, 请求释放当前线程正在执行的持久化任务的租约而非移除任务记录
+     * <p>用于可安全重做的任务(如导出), 返回{@code true}时调用方不应再写入最终状态, 任务将由其他节点重新执行
+     *
+     * @return 线程池正被强制关闭且当前线程正在执行持久化任务
+     */
+    public static boolean releaseOnForcedShutdown() {
+        DurableTask task = CURRENT_DURABLE_TASK.get();
+        if (!forcedShutdown || null == task) {
+            return false;
+        }
+        task.releaseRequested = true;
+        return true;
+    }
+
+    /**
+     * 是否启用持久化任务队列
+     */
+    public static boolean isDurable() {
+        return null != durableQueue;
+    }
+
+    private static void releaseIfDurable(Runnable task) {
+        if (task instanceof DurableTask) {
+            durableQueue.release(((DurableTask) task).taskKey);
+        }
+    }
+
     /**
      * {@link ExecutorService#submit(Callable)}
      * @param task
@@ -94,4 +311,50 @@ public class ExcelHandlerExecutors {
             throw new RuntimeException("ExcelTask execute error");
         }
     }
+
+    /**
+     * 提交子任务, 由主线程池中的任务调用
+     * @param task
+     * @param <T>
+     * @return
+     */
+    public static <T> Future<T> submitSubTask(Callable<T> task) {
+        try {
+            return subTaskExecutor.submit(task);
+        } catch (Exception e) {
+            log.error("ExcelSubTask failed ", e);
+            throw new RuntimeException("ExcelSubTask execute error");
+        }
+    }
+
+    /**
+     * 持久化任务: 任务执行结束(无论成功失败)即移除任务记录, 仅异常退出或任务请求释放时释放租约等待重新认领
+     */
+    private static class DurableTask implements Runnable {
+        private final String taskKey;
+        private final Runnable task;
+        private boolean releaseRequested;
+
+        private DurableTask(String taskKey, Runnable task) {
+            this.taskKey = taskKey;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            boolean finished = false;
+            CURRENT_DURABLE_TASK.set(this);
+            try {
+                task.run();
+                finished = !releaseRequested;
+            } finally {
+                CURRENT_DURABLE_TASK.remove();
+                if (finished) {
+                    durableQueue.complete(taskKey);
+                } else {
+                    durableQueue.release(taskKey);
+                }
+            }
+        }
+    }
 }
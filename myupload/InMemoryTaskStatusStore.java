@@ -0,0 +1,79 @@
+import lombok.AllArgsConstructor;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description 基于本地内存的任务状态存储
+ * <p>仅适用于单机部署或测试, 多节点部署时轮询请求可能落到其他节点而查不到任务
+ * @Date 2022/3/14
+ * @author mingzhe.xiang
+ */
+public class InMemoryTaskStatusStore implements TaskStatusStore {
+
+    /**
+     * 每写入多少次清理一次过期任务
+     */
+    private static final int PURGE_INTERVAL = 256;
+
+    private final Map<String, Entry> tasks = new ConcurrentHashMap<>();
+
+    private final AtomicInteger writeCount = new AtomicInteger();
+
+    @Override
+    public boolean create(String taskKey, TaskResultVo result, long timeOutSec) {
+        put(taskKey, result, timeOutSec);
+        return true;
+    }
+
+    @Override
+    public void update(String taskKey, TaskResultVo result, long timeOutSec) {
+        put(taskKey, result, timeOutSec);
+    }
+
+    @Override
+    public TaskResultVo get(String taskKey) {
+        Entry entry = tasks.get(taskKey);
+        if (null == entry) {
+            return null;
+        }
+        if (entry.isExpired(System.nanoTime())) {
+            tasks.remove(taskKey, entry);
+            return null;
+        }
+        return entry.result;
+    }
+
+    private void put(String taskKey, TaskResultVo result, long timeOutSec) {
+        tasks.put(taskKey, new Entry(result, System.nanoTime() + TimeUnit.SECONDS.toNanos(timeOutSec)));
+        if (writeCount.incrementAndGet() % PURGE_INTERVAL == 0) {
+            purgeExpired();
+        }
+    }
+
+    /**
+     * 清理过期任务
+     */
+    private void purgeExpired() {
+        long now = System.nanoTime();
+        Iterator<Entry> iterator = tasks.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().isExpired(now)) {
+                iterator.remove();
+            }
+        }
+    }
+
+    @AllArgsConstructor
+    private static class Entry {
+        private final TaskResultVo result;
+        private final long expireAtNanos;
+
+        private boolean isExpired(long now) {
+            return now - expireAtNanos >= 0;
+        }
+    }
+}
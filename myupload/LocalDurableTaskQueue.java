@@ -0,0 +1,277 @@
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * @Description 基于文件目录的持久化任务队列
+ * <pre>
+ * 每个任务对应目录下的文件:
+ *   {@code <id>.task}        任务记录JSON
+ *   {@code <id>.lease.<gen>} 第gen代租约, 内容为持有节点标识, 修改时间即最近续租时间
+ * 代数最大的租约为当前租约。认领过期租约即原子创建下一代租约文件, 同一代只有一个节点能创建成功,
+ * 因此检查过期与认领之间无竞态; 持有者发现更高代租约存在即视为租约丢失。
+ * 目录可以是本机路径(仅本节点重启恢复), 也可以是多节点共享挂载路径(跨节点认领),
+ * 共享时各节点时钟偏差须远小于租约时长。
+ * </pre>
+ * @Date 2022/3/21
+ * @author mingzhe.xiang
+ */
+@Slf4j
+public class LocalDurableTaskQueue implements DurableTaskQueue {
+
+    private static final String TASK_SUFFIX = ".task";
+    private static final String LEASE_SUFFIX = ".lease.";
+
+    /**
+     * 默认租约时长 60秒
+     */
+    private static final long DEFAULT_LEASE_MILLIS = 60 * 1000L;
+
+    /**
+     * 释放的租约修改时间置为此值, 立即可被认领
+     */
+    private static final FileTime EXPIRED = FileTime.fromMillis(0L);
+
+    private final Path directory;
+    private final long leaseMillis;
+    /**
+     * 当前节点标识
+     */
+    private final String owner;
+    /**
+     * 当前节点持有租约的任务id及租约代数
+     */
+    private final Map<String, Long> ownedLeases = new ConcurrentHashMap<>();
+
+    public LocalDurableTaskQueue(String directory) throws IOException {
+        this(Paths.get(directory), DEFAULT_LEASE_MILLIS);
+    }
+
+    public LocalDurableTaskQueue(Path directory, long leaseMillis) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.leaseMillis = leaseMillis;
+        this.owner = ManagementFactory.getRuntimeMXBean().getName() + "-" + UUID.randomUUID().toString().substring(0, 8);
+    }
+
+    @Override
+    public void offer(TaskRecord record) throws Exception {
+        String id = fileId(record.getTaskKey());
+        // 先建租约再写任务, 保证扫描到的任务都已有持有者
+        if (!tryCreateLease(id, 0L)) {
+            throw new IllegalStateException("task lease already exists taskKey:" + record.getTaskKey());
+        }
+        Path tmp = directory.resolve(id + TASK_SUFFIX + "." + owner + ".tmp");
+        try {
+            Files.write(tmp, JSON.toJSONBytes(record));
+            Files.move(tmp, taskPath(id), StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception e) {
+            ownedLeases.remove(id);
+            Files.deleteIfExists(tmp);
+            Files.deleteIfExists(leasePath(id, 0L));
+            throw e;
+        }
+    }
+
+    @Override
+    public void complete(String taskKey) {
+        String id = fileId(taskKey);
+        ownedLeases.remove(id);
+        try {
+            Files.deleteIfExists(taskPath(id));
+            deleteLeases(id, Long.MAX_VALUE);
+        } catch (IOException e) {
+            log.error("LocalDurableTaskQueue complete error taskKey:{}", taskKey, e);
+        }
+    }
+
+    @Override
+    public void release(String taskKey) {
+        String id = fileId(taskKey);
+        Long generation = ownedLeases.remove(id);
+        if (null == generation) {
+            return;
+        }
+        try {
+            // 置为过期而非删除, 保证租约代数单调递增
+            if (isCurrentLease(id, generation)) {
+                Files.setLastModifiedTime(leasePath(id, generation), EXPIRED);
+            }
+        } catch (NoSuchFileException e) {
+            // 租约已被其他节点认领
+        } catch (IOException e) {
+            log.error("LocalDurableTaskQueue release error taskKey:{}", taskKey, e);
+        }
+    }
+
+    @Override
+    public void renewLeases() {
+        FileTime now = FileTime.fromMillis(System.currentTimeMillis());
+        for (Map.Entry<String, Long> lease : ownedLeases.entrySet()) {
+            String id = lease.getKey();
+            try {
+                if (isCurrentLease(id, lease.getValue())) {
+                    Files.setLastModifiedTime(leasePath(id, lease.getValue()), now);
+                    continue;
+                }
+            } catch (NoSuchFileException e) {
+                // 租约已被其他节点认领并清理
+            } catch (IOException e) {
+                log.error("LocalDurableTaskQueue renew lease error id:{}", id, e);
+                continue;
+            }
+            ownedLeases.remove(id, lease.getValue());
+            log.warn("LocalDurableTaskQueue lease lost id:{}", id);
+        }
+    }
+
+    @Override
+    public List<TaskRecord> claimExpired(int maxTasks) {
+        List<TaskRecord> claimed = new ArrayList<>();
+        if (maxTasks <= 0) {
+            return claimed;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TASK_SUFFIX)) {
+            for (Path taskPath : stream) {
+                String fileName = taskPath.getFileName().toString();
+                String id = fileName.substring(0, fileName.length() - TASK_SUFFIX.length());
+                if (ownedLeases.containsKey(id) || !tryClaim(id)) {
+                    continue;
+                }
+                TaskRecord record = readRecord(id);
+                if (null == record) {
+                    // 认领期间任务已完成则一并清理新建的租约
+                    if (Files.exists(taskPath)) {
+                        release(id);
+                    } else {
+                        complete(id);
+                    }
+                    continue;
+                }
+                claimed.add(record);
+                if (claimed.size() >= maxTasks) {
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.error("LocalDurableTaskQueue claim error", e);
+        }
+        return claimed;
+    }
+
+    @Override
+    public long leaseMillis() {
+        return leaseMillis;
+    }
+
+    /**
+     * 认领任务: 当前租约不存在或已过期时创建下一代租约, 成功后清理旧租约
+     */
+    private boolean tryClaim(String id) throws IOException {
+        long current = currentGeneration(id);
+        if (current >= 0) {
+            try {
+                if (Files.getLastModifiedTime(leasePath(id, current)).toMillis() + leaseMillis > System.currentTimeMillis()) {
+                    return false;
+                }
+            } catch (NoSuchFileException e) {
+                // 已被其他节点认领或任务已完成, 下次扫描再处理
+                return false;
+            }
+        }
+        if (!tryCreateLease(id, current + 1)) {
+            return false;
+        }
+        deleteLeases(id, current + 1);
+        return true;
+    }
+
+    private boolean tryCreateLease(String id, long generation) throws IOException {
+        try {
+            Path leasePath = Files.createFile(leasePath(id, generation));
+            Files.write(leasePath, owner.getBytes(StandardCharsets.UTF_8));
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+        ownedLeases.put(id, generation);
+        return true;
+    }
+
+    /**
+     * 租约存在且没有更高代租约
+     */
+    private boolean isCurrentLease(String id, long generation) {
+        return Files.exists(leasePath(id, generation)) && !Files.exists(leasePath(id, generation + 1));
+    }
+
+    /**
+     * 当前租约代数, 无租约时返回-1
+     */
+    private long currentGeneration(String id) throws IOException {
+        long current = -1L;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, id + LEASE_SUFFIX + "*")) {
+            for (Path leasePath : stream) {
+                current = Math.max(current, generationOf(id, leasePath));
+            }
+        }
+        return current;
+    }
+
+    /**
+     * 删除代数小于{@code before}的租约
+     */
+    private void deleteLeases(String id, long before) throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, id + LEASE_SUFFIX + "*")) {
+            for (Path leasePath : stream) {
+                long generation = generationOf(id, leasePath);
+                if (generation >= 0 && generation < before) {
+                    Files.deleteIfExists(leasePath);
+                }
+            }
+        }
+    }
+
+    private TaskRecord readRecord(String id) {
+        try {
+            return JSON.parseObject(Files.readAllBytes(taskPath(id)), TaskRecord.class);
+        } catch (NoSuchFileException e) {
+            // 认领期间任务已完成
+            return null;
+        } catch (Exception e) {
+            log.error("LocalDurableTaskQueue read task error id:{}", id, e);
+            return null;
+        }
+    }
+
+    private Path taskPath(String id) {
+        return directory.resolve(id + TASK_SUFFIX);
+    }
+
+    private Path leasePath(String id, long generation) {
+        return directory.resolve(id + LEASE_SUFFIX + generation);
+    }
+
+    private static long generationOf(String id, Path leasePath) {
+        try {
+            return Long.parseLong(leasePath.getFileName().toString().substring(id.length() + LEASE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1L;
+        }
+    }
+
+    /**
+     * 任务Key转换为文件名, see {@code AbstractHandler#TASK_STATUS_FMT}
+     */
+    private static String fileId(String taskKey) {
+        return taskKey.replaceAll("[^A-Za-z0-9_-]", "_");
+    }
+}
@@ -0,0 +1,60 @@
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.UUID;
+
+/**
+ * @Description 本地目录文件中转站
+ * <pre>
+ * 使用本地目录做文件中转站,
+ * 适用于单机部署、本地调试及压测, 资源Key即目录下的文件名。
+ * </pre>
+ * @Date 2022/3/21
+ * @author mingzhe.xiang
+ */
+@Slf4j
+public class LocalTransactionStation implements TransactionStation {
+
+    private final Path directory;
+
+    public LocalTransactionStation(String directory) throws IOException {
+        this.directory = Files.createDirectories(Paths.get(directory)).toAbsolutePath().normalize();
+    }
+
+    @Override
+    public InputStream pullResourceFromStation(String key) throws Exception {
+        log.info("Read Local Station file:{}", key);
+        return Files.newInputStream(resolve(key));
+    }
+
+    @Override
+    public String pushResourceToStation(StationResource resource) throws Exception {
+        String key = UUID.randomUUID() + "-" + FilenameUtils.getName(resource.getName());
+        Files.copy(resource.getData(), directory.resolve(key));
+        return key;
+    }
+
+    @Override
+    public void deleteResource(String key) throws Exception {
+        Files.deleteIfExists(resolve(key));
+        if (log.isInfoEnabled()) {
+            log.info("Local Station delete file>>>>> directory:{}, file:{}", directory, key);
+        }
+    }
+
+    /**
+     * 资源Key不允许跳出中转站目录
+     */
+    private Path resolve(String key) {
+        Path path = directory.resolve(key).normalize();
+        if (!path.startsWith(directory)) {
+            throw new IllegalArgumentException("illegal resource key:" + key);
+        }
+        return path;
+    }
+}
@@ -0,0 +1,132 @@
+import com.alibaba.fastjson.JSON;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * @Description 基于Redis的任务状态存储
+ * <pre>
+ * 1. 紧凑编码: 状态值以 {@code <status>[;<msgLength>;<msg>][<resultJson>]} 形式存储,
+ *    msg为状态默认文案时省略, result为空{@code CxBatchResult}时省略, 如RUNNING状态仅存储"1"。
+ *    读取始终兼容两种格式; 写入默认仍为旧版整对象JSON, 须所有节点均已升级到可读取紧凑编码的版本后
+ *    再开启{@code compactWrite}(如系统属性{@value #COMPACT_WRITE_PROPERTY}=true), 否则滚动发布期间旧节点无法解析。
+ * 2. 每个任务仅写入两次(提交时{@link #create}与结束时{@link #update}), 均同步写入,
+ *    保证任务结束(含持久化队列删除任务记录)前最终状态已落地。
+ *    {@link RedisTemplate}仅提供带过期时间的单Key读写, 不支持pipeline, 因此不做跨任务的批量写入。
+ * </pre>
+ * @Date 2022/3/14
+ * @author mingzhe.xiang
+ */
+public class RedisTaskStatusStore implements TaskStatusStore {
+
+    /**
+     * 开启紧凑编码写入的系统属性
+     */
+    public static final String COMPACT_WRITE_PROPERTY = "excel.taskStatus.compactWrite";
+
+    private static final char MSG_SEPARATOR = ';';
+
+    /**
+     * 空结果序列化后的JSON, 与其相同时不写入
+     */
+    private static final String EMPTY_RESULT_JSON = JSON.toJSONString(new CxBatchResult());
+
+    private final RedisTemplate<String> redisTemplate;
+    /**
+     * 是否以紧凑编码写入, 否则写入旧版整对象JSON
+     */
+    private final boolean compactWrite;
+
+    public RedisTaskStatusStore(RedisTemplate<String> redisTemplate) {
+        this(redisTemplate, Boolean.getBoolean(COMPACT_WRITE_PROPERTY));
+    }
+
+    public RedisTaskStatusStore(RedisTemplate<String> redisTemplate, boolean compactWrite) {
+        this.redisTemplate = redisTemplate;
+        this.compactWrite = compactWrite;
+    }
+
+    @Override
+    public boolean create(String taskKey, TaskResultVo result, long timeOutSec) {
+        return redisTemplate.set(taskKey, write(result), timeOutSec);
+    }
+
+    @Override
+    public void update(String taskKey, TaskResultVo result, long timeOutSec) {
+        redisTemplate.set(taskKey, write(result), timeOutSec);
+    }
+
+    @Override
+    public TaskResultVo get(String taskKey) {
+        String value = redisTemplate.get(taskKey);
+        return StringUtils.isBlank(value) ? null : decode(value);
+    }
+
+    private String write(TaskResultVo result) {
+        return compactWrite ? encode(result) : JSON.toJSONString(result);
+    }
+
+    /**
+     * 编码任务状态
+     */
+    static String encode(TaskResultVo result) {
+        StringBuilder sb = new StringBuilder(16).append(result.getStatus());
+        String msg = result.getMsg();
+        if (!StringUtils.equals(msg, defaultMsg(result.getStatus()))) {
+            String nonNullMsg = StringUtils.defaultString(msg);
+            sb.append(MSG_SEPARATOR).append(nonNullMsg.length()).append(MSG_SEPARATOR).append(nonNullMsg);
+        }
+        if (null != result.getResult()) {
+            String resultJson = JSON.toJSONString(result.getResult());
+            if (!EMPTY_RESULT_JSON.equals(resultJson)) {
+                sb.append(resultJson);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 解码任务状态
+     */
+    static TaskResultVo decode(String value) {
+        // 兼容旧版整对象JSON格式
+        if (value.charAt(0) == '{') {
+            return JSON.parseObject(value, TaskResultVo.class);
+        }
+        int pos = value.charAt(0) == '-' ? 1 : 0;
+        while (pos < value.length() && Character.isDigit(value.charAt(pos))) {
+            pos++;
+        }
+        int status = Integer.parseInt(value.substring(0, pos));
+
+        String msg = defaultMsg(status);
+        if (pos < value.length() && value.charAt(pos) == MSG_SEPARATOR) {
+            int lengthEnd = value.indexOf(MSG_SEPARATOR, pos + 1);
+            int msgLength = Integer.parseInt(value.substring(pos + 1, lengthEnd));
+            pos = lengthEnd + 1 + msgLength;
+            msg = value.substring(lengthEnd + 1, pos);
+        }
+
+        BatchResult result = pos < value.length()
+                ? JSON.parseObject(value.substring(pos), BatchResult.class)
+                : new CxBatchResult();
+        return new TaskResultVo(status, result, msg);
+    }
+
+    /**
+     * 各状态默认文案, 与{@link TaskResultVo}工厂方法保持一致
+     */
+    private static String defaultMsg(int status) {
+        if (status == TaskResultVo.TaskStatus.RUNNING.getVal()) {
+            return "running";
+        }
+        if (status == TaskResultVo.TaskStatus.DONE.getVal()) {
+            return "success";
+        }
+        if (status == TaskResultVo.TaskStatus.FAILED.getVal()) {
+            return "failed";
+        }
+        if (status == TaskResultVo.TaskStatus.EXPIRED.getVal()) {
+            return "expired";
+        }
+        return null;
+    }
+}
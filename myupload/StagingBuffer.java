@@ -0,0 +1,302 @@
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @Description 导出数据暂存区
+ * <pre>
+ * 数据先写入池化的堆外内存块, 总量超过{@code memoryThreshold}时整体转存到{@code tempDir}下的唯一临时文件。
+ * 所有暂存区共享进程级堆外内存预算(系统属性{@value #MAX_DIRECT_MEMORY_PROPERTY}, 默认64MB),
+ * 预算用尽时即使未达到{@code memoryThreshold}也提前转存, 并发导出数量再多也不会耗尽堆外内存。
+ * 使用方式: 写入 -> {@link #close()} -> {@link #openInputStream()}读取 -> {@link #release()}释放
+ * </pre>
+ * @Date 2022/4/6
+ * @author mingzhe.xiang
+ */
+@Slf4j
+public class StagingBuffer extends OutputStream {
+
+    /**
+     * 内存块大小 64KB
+     */
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * 内存块池最多缓存块数 (256 * 64KB = 16MB)
+     */
+    private static final int MAX_POOLED_CHUNKS = 256;
+
+    /**
+     * 堆外内存预算系统属性(字节)
+     */
+    public static final String MAX_DIRECT_MEMORY_PROPERTY = "excel.staging.maxDirectMemory";
+
+    /**
+     * 进程内最多分配的内存块数(使用中 + 池中缓存)
+     */
+    private static final int MAX_DIRECT_CHUNKS = (int) Math.max(Long.getLong(MAX_DIRECT_MEMORY_PROPERTY, 64 * 1024 * 1024L) / CHUNK_SIZE, 0);
+
+    private static final Queue<ByteBuffer> CHUNK_POOL = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOLED_CHUNKS = new AtomicInteger();
+
+    private static final AtomicInteger ALLOCATED_CHUNKS = new AtomicInteger();
+
+    private final long memoryThreshold;
+    private final Path tempDir;
+    private final String fileName;
+
+    private final List<ByteBuffer> chunks = new ArrayList<>();
+    private Path spillFile;
+    private OutputStream spillOut;
+    private long size;
+    private boolean closed;
+    private boolean released;
+
+    /**
+     * @param memoryThreshold 内存暂存上限(字节)
+     * @param tempDir         超出上限时临时文件目录
+     * @param fileName        导出文件名, 用于生成临时文件名
+     */
+    public StagingBuffer(long memoryThreshold, Path tempDir, String fileName) {
+        this.memoryThreshold = memoryThreshold;
+        this.tempDir = tempDir;
+        this.fileName = fileName;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (closed) {
+            throw new IOException("StagingBuffer closed");
+        }
+        if (null == spillOut && size + 1 <= memoryThreshold) {
+            ByteBuffer chunk = writableChunk();
+            if (null != chunk) {
+                chunk.put((byte) b);
+                size++;
+                return;
+            }
+        }
+        if (null == spillOut) {
+            spill();
+        }
+        spillOut.write(b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) {
+            throw new IOException("StagingBuffer closed");
+        }
+        if (null == spillOut && size + len <= memoryThreshold) {
+            int written = writeToChunks(b, off, len);
+            size += written;
+            if (written == len) {
+                return;
+            }
+            off += written;
+            len -= written;
+        }
+        // 超出内存上限或堆外内存预算用尽
+        if (null == spillOut) {
+            spill();
+        }
+        spillOut.write(b, off, len);
+        size += len;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (null != spillOut) {
+            spillOut.flush();
+        }
+    }
+
+    /**
+     * 结束写入
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (null != spillOut) {
+            spillOut.close();
+        }
+    }
+
+    /**
+     * 读取已写入的数据, 须在{@link #close()}之后调用
+     *
+     * @return 数据输入流
+     * @throws IOException 读取临时文件失败
+     */
+    public InputStream openInputStream() throws IOException {
+        if (!closed) {
+            throw new IllegalStateException("StagingBuffer is still being written");
+        }
+        if (null != spillFile) {
+            return Files.newInputStream(spillFile);
+        }
+        List<ByteBuffer> views = new ArrayList<>(chunks.size());
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer view = chunk.duplicate();
+            view.flip();
+            views.add(view);
+        }
+        return new ByteBufferInputStream(views);
+    }
+
+    /**
+     * 释放内存块并删除临时文件, 重复调用无副作用
+     */
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        closed = true;
+        recycleChunks();
+        try {
+            if (null != spillOut) {
+                spillOut.close();
+            }
+            if (null != spillFile) {
+                if (log.isDebugEnabled()) {
+                    log.debug("delete staging spillFile:[path:{}]", spillFile.toAbsolutePath());
+                }
+                Files.deleteIfExists(spillFile);
+            }
+        } catch (IOException e) {
+            log.error("StagingBuffer release spillFile error path:{}", spillFile, e);
+            spillFile.toFile().deleteOnExit();
+        }
+    }
+
+    /**
+     * 已写入字节数
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 是否已转存到临时文件
+     */
+    public boolean isSpilled() {
+        return null != spillFile;
+    }
+
+    /**
+     * 写入内存块, 堆外内存预算用尽时停止
+     *
+     * @return 实际写入字节数
+     */
+    private int writeToChunks(byte[] b, int off, int len) {
+        int written = 0;
+        while (written < len) {
+            ByteBuffer chunk = writableChunk();
+            if (null == chunk) {
+                break;
+            }
+            int n = Math.min(len - written, chunk.remaining());
+            chunk.put(b, off + written, n);
+            written += n;
+        }
+        return written;
+    }
+
+    /**
+     * 当前可写入的内存块, 已满时申请新块, 预算用尽时返回{@code null}
+     */
+    private ByteBuffer writableChunk() {
+        ByteBuffer chunk = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+        if (null != chunk && chunk.hasRemaining()) {
+            return chunk;
+        }
+        chunk = acquire();
+        if (null != chunk) {
+            chunks.add(chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * 内存暂存超限, 已写入数据转存到临时文件
+     */
+    private void spill() throws IOException {
+        String baseName = FilenameUtils.getBaseName(fileName);
+        String originExtension = FilenameUtils.getExtension(fileName);
+        String extension = StringUtils.isBlank(originExtension) ? ".tmp" : String.format(".%s", originExtension);
+        Files.createDirectories(tempDir);
+        spillFile = Files.createTempFile(tempDir, baseName + "-", extension);
+        spillOut = Files.newOutputStream(spillFile);
+
+        // 全部写出后再回收, 写出失败时内存块仍完整保留在chunks中, 由release()统一回收
+        byte[] copyBuf = new byte[CHUNK_SIZE];
+        for (ByteBuffer chunk : chunks) {
+            ByteBuffer view = chunk.duplicate();
+            view.flip();
+            while (view.hasRemaining()) {
+                int n = Math.min(copyBuf.length, view.remaining());
+                view.get(copyBuf, 0, n);
+                spillOut.write(copyBuf, 0, n);
+            }
+        }
+        recycleChunks();
+    }
+
+    private void recycleChunks() {
+        for (ByteBuffer chunk : chunks) {
+            recycle(chunk);
+        }
+        chunks.clear();
+    }
+
+    /**
+     * 申请内存块, 优先复用池中缓存, 超出预算或堆外内存不足时返回{@code null}
+     */
+    private static ByteBuffer acquire() {
+        ByteBuffer chunk = CHUNK_POOL.poll();
+        if (null != chunk) {
+            POOLED_CHUNKS.decrementAndGet();
+            return chunk;
+        }
+        if (ALLOCATED_CHUNKS.incrementAndGet() > MAX_DIRECT_CHUNKS) {
+            ALLOCATED_CHUNKS.decrementAndGet();
+            return null;
+        }
+        try {
+            return ByteBuffer.allocateDirect(CHUNK_SIZE);
+        } catch (OutOfMemoryError e) {
+            ALLOCATED_CHUNKS.decrementAndGet();
+            log.warn("StagingBuffer allocate direct memory failed, spill to disk: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static void recycle(ByteBuffer chunk) {
+        if (POOLED_CHUNKS.incrementAndGet() > MAX_POOLED_CHUNKS) {
+            POOLED_CHUNKS.decrementAndGet();
+            // 不再缓存, 交由GC回收
+            ALLOCATED_CHUNKS.decrementAndGet();
+            return;
+        }
+        chunk.clear();
+        CHUNK_POOL.offer(chunk);
+    }
+}
@@ -0,0 +1,85 @@
+import com.alibaba.fastjson.JSON;
+import lombok.*;
+
+/**
+ * @Description 持久化任务记录
+ * <p>{@link TaskParam#getQuery()}为多态类型, 持久化时拆分为具体类型名与JSON分别存储, 避免反序列化开启autoType
+ * @Date 2022/3/21
+ * @author mingzhe.xiang
+ */
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class TaskRecord {
+    private String       taskKey;
+    private TaskType     type;
+    /** 处理该任务的Handler, see {@link AbstractHandler#resolveRecoveredTask(TaskRecord)} **/
+    private String       handlerName;
+    /** 导出文件名 **/
+    private String       fileName;
+    /** 导入文件在中转站中的Key **/
+    private String       resourceKey;
+    private long         submitTime;
+
+    private String       mart;
+    private String       language;
+    private UserBaseInfo userBaseInfo;
+    private Integer      entrance;
+    private String       queryType;
+    private String       queryJson;
+
+    public enum TaskType {
+        UPLOAD, DOWNLOAD
+    }
+
+    /**
+     * 构造任务记录
+     *
+     * @param taskKey     任务Key
+     * @param type        任务类型
+     * @param handlerName 处理该任务的Handler
+     * @param taskParam   任务参数对象
+     * @return 任务记录
+     */
+    public static TaskRecord of(String taskKey, TaskType type, String handlerName, TaskParam taskParam) {
+        Query query = taskParam.getQuery();
+        return TaskRecord.builder()
+                .taskKey(taskKey)
+                .type(type)
+                .handlerName(handlerName)
+                .submitTime(System.currentTimeMillis())
+                .mart(taskParam.getMart())
+                .language(taskParam.getLanguage())
+                .userBaseInfo(taskParam.getUserBaseInfo())
+                .entrance(taskParam.getEntrance())
+                .queryType(null == query ? null : query.getClass().getName())
+                .queryJson(null == query ? null : JSON.toJSONString(query))
+                .build();
+    }
+
+    /**
+     * 还原任务参数对象
+     *
+     * @return 任务参数对象
+     * @throws ClassNotFoundException 查询条件类型不存在
+     */
+    public TaskParam toTaskParam() throws ClassNotFoundException {
+        Query query = null;
+        if (null != queryType) {
+            Class<?> clazz = Class.forName(queryType);
+            if (!Query.class.isAssignableFrom(clazz)) {
+                throw new IllegalStateException("illegal query type:" + queryType);
+            }
+            query = (Query) JSON.parseObject(queryJson, clazz);
+        }
+        return TaskParam.builder()
+                .mart(mart)
+                .language(language)
+                .userBaseInfo(userBaseInfo)
+                .entrance(entrance)
+                .query(query)
+                .build();
+    }
+}
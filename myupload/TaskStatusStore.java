@@ -0,0 +1,35 @@
+/**
+ * @Description 任务状态存储
+ * <pre>
+ * 任务状态的写入与查询统一经由此接口,
+ * 分布式部署使用{@link RedisTaskStatusStore}, 单机或测试场景使用{@link InMemoryTaskStatusStore}
+ * </pre>
+ * @Date 2022/3/14
+ * @author mingzhe.xiang
+ */
+public interface TaskStatusStore {
+
+	/**
+	 * 创建任务状态(同步写入)
+	 * @param taskKey 任务Key
+	 * @param result 任务状态
+	 * @param timeOutSec 过期时间(秒)
+	 * @return 是否写入成功
+	 */
+	boolean create(String taskKey, TaskResultVo result, long timeOutSec);
+
+	/**
+	 * 更新任务状态(同步写入)
+	 * @param taskKey 任务Key
+	 * @param result 任务状态
+	 * @param timeOutSec 过期时间(秒)
+	 */
+	void update(String taskKey, TaskResultVo result, long timeOutSec);
+
+	/**
+	 * 获取任务状态
+	 * @param taskKey 任务Key
+	 * @return 任务状态, 不存在或已过期时返回{@code null}
+	 */
+	TaskResultVo get(String taskKey);
+}
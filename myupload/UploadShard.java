@@ -0,0 +1,129 @@
+import lombok.Getter;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * @Description 导入文件分片
+ * <pre>
+ * 分片数据为暂存文件内存映射的只读视图, {@link #openStream()}每次返回独立的输入流, 可被多个线程并发读取。
+ * 按行切分的分片会在每片前拼接表头, 各分片可作为完整文件交给{@code handleUploadData}处理。
+ * </pre>
+ * @Date 2022/4/18
+ * @author mingzhe.xiang
+ */
+public class UploadShard {
+
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    /**
+     * 分片序号
+     */
+    @Getter
+    private final int index;
+    /**
+     * 起始数据行(含, 不计表头)
+     */
+    @Getter
+    private final int startRow;
+    /**
+     * 结束数据行(不含), {@code -1}表示未知
+     */
+    @Getter
+    private final int endRow;
+
+    /**
+     * 表头及分片数据, 表头为所有分片共享, 仅通过{@link #openStream()}以独立视图读取
+     */
+    private final ByteBuffer header;
+    private final ByteBuffer body;
+
+    private UploadShard(int index, int startRow, int endRow, ByteBuffer header, ByteBuffer body) {
+        this.index = index;
+        this.startRow = startRow;
+        this.endRow = endRow;
+        this.header = header;
+        this.body = body;
+    }
+
+    /**
+     * 整个文件作为一个分片
+     *
+     * @param data 暂存文件数据
+     * @return 分片
+     */
+    public static UploadShard whole(ByteBuffer data) {
+        return new UploadShard(0, 0, -1, EMPTY, slice(data, 0, data.limit()));
+    }
+
+    /**
+     * 按行切分文本文件(如CSV), 每片前拼接表头
+     * <p>按CSV规则识别双引号包围的字段(字段内{@code ""}为转义引号), 引号内的换行不作为行结束, 多行字段不会被切开;
+     * 仅适用于UTF-8/GBK等双引号与换行为单字节且不会出现在多字节字符中的编码
+     *
+     * @param data         暂存文件数据
+     * @param headerLines  表头行数
+     * @param rowsPerShard 每片数据行数
+     * @return 分片列表
+     */
+    public static List<UploadShard> splitByLines(ByteBuffer data, int headerLines, int rowsPerShard) {
+        int limit = data.limit();
+        int pos = 0;
+        for (int i = 0; i < headerLines && pos < limit; i++) {
+            pos = nextLine(data, pos, limit);
+        }
+        ByteBuffer header = slice(data, 0, pos);
+
+        List<UploadShard> shards = new ArrayList<>();
+        int row = 0;
+        while (pos < limit) {
+            int start = pos;
+            int startRow = row;
+            while (row - startRow < rowsPerShard && pos < limit) {
+                pos = nextLine(data, pos, limit);
+                row++;
+            }
+            shards.add(new UploadShard(shards.size(), startRow, row, header, slice(data, start, pos)));
+        }
+        if (shards.isEmpty()) {
+            shards.add(new UploadShard(0, 0, 0, header, EMPTY));
+        }
+        return shards;
+    }
+
+    /**
+     * 打开分片输入流(表头 + 分片数据)
+     *
+     * @return 输入流
+     */
+    public InputStream openStream() {
+        return new ByteBufferInputStream(Arrays.asList(header.duplicate(), body.duplicate()));
+    }
+
+    /**
+     * 下一行起始位置, 跳过引号内的换行
+     */
+    private static int nextLine(ByteBuffer data, int pos, int limit) {
+        boolean quoted = false;
+        while (pos < limit) {
+            byte b = data.get(pos++);
+            if (b == '"') {
+                // 转义引号""连续翻转两次, 状态不变
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                break;
+            }
+        }
+        return pos;
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int from, int to) {
+        ByteBuffer view = data.duplicate();
+        view.limit(to);
+        view.position(from);
+        return view.slice().asReadOnlyBuffer();
+    }
+}